@@ -0,0 +1,95 @@
+package com.gopro.graphtest;
+
+/**
+ * Y bounds of a series in auto-range mode, following the min/max of its
+ * visible samples.
+ * <p>
+ * The bounds are left alone until the data leaves them or shrinks to less
+ * than {@link #SHRINK_AT} of their span, and are then moved to the data
+ * range plus {@link #HEADROOM} either side, rounded out to a 1-2-5 step.
+ * So labels and grid are only redrawn when the range really changes, not
+ * on every sample. Moves ease out over {@link #ANIM_NANOS}.
+ * <p>
+ * UI thread only.
+ */
+final class AutoRange {
+
+    static final float HEADROOM = 0.1F;
+    static final float SHRINK_AT = 0.5F;
+    static final long ANIM_NANOS = 250 * 1000 * 1000L;
+    private static final int SNAP_DIVISIONS = 8;
+
+    private float fromMin, fromMax, toMin, toMax;
+    private long animStart;
+    private boolean targeted, animating;
+
+    boolean isAnimating() {
+        return animating;
+    }
+
+    /**
+     * Retargets if the data range [lo, hi] calls for it and moves s one step
+     * of the animation towards the target.
+     *
+     * @param minSpan smallest span the bounds may shrink to
+     * @return true if the bounds of s changed
+     */
+    boolean step(Series s, float lo, float hi, float minSpan, long nowNanos) {
+        boolean bounded = s.yAbsMax > s.yAbsMin;
+        if (bounded) {
+            if (lo < s.yAbsMin) lo = s.yAbsMin;
+            if (hi > s.yAbsMax) hi = s.yAbsMax;
+        }
+
+        if (lo <= hi) {
+            float curMin = targeted ? toMin : s.yMin;
+            float curMax = targeted ? toMax : s.yMax;
+            boolean outside = lo < curMin || hi > curMax;
+            boolean loose = (hi - lo) < SHRINK_AT * (curMax - curMin);
+            if (!targeted || outside || loose) retarget(s, lo, hi, minSpan, bounded, nowNanos);
+        }
+
+        if (!animating) return false;
+        float t = (nowNanos - animStart) / (float) ANIM_NANOS;
+        if (t >= 1F) {
+            t = 1F;
+            animating = false;
+        }
+        float ease = 1F - (1F - t) * (1F - t) * (1F - t);
+        s.setYMinMax(fromMin + (toMin - fromMin) * ease, fromMax + (toMax - fromMax) * ease);
+        return true;
+    }
+
+    private void retarget(Series s, float lo, float hi, float minSpan, boolean bounded, long nowNanos) {
+        float span = (hi - lo) * (1F + 2 * HEADROOM);
+        if (span < minSpan) span = minSpan;
+        if (!(span > 0)) span = (lo != 0) ? Math.abs(lo) : 1F;
+
+        float mid = (lo + hi) * 0.5F;
+        float step = niceStep(span / SNAP_DIVISIONS);
+        float min = (float) (Math.floor((mid - span * 0.5F) / step) * step);
+        float max = (float) (Math.ceil((mid + span * 0.5F) / step) * step);
+        if (bounded) {
+            if (min < s.yAbsMin) min = s.yAbsMin;
+            if (max > s.yAbsMax) max = s.yAbsMax;
+        }
+        if (targeted && min == toMin && max == toMax) return;
+
+        fromMin = s.yMin;
+        fromMax = s.yMax;
+        toMin = min;
+        toMax = max;
+        animStart = nowNanos;
+        targeted = true;
+        animating = true;
+    }
+
+    /* Smallest 1, 2 or 5 times a power of ten not below x */
+    static float niceStep(float x) {
+        double mag = Math.pow(10, Math.floor(Math.log10(x)));
+        double f = x / mag;
+        double nice = (f <= 1) ? 1 : (f <= 2) ? 2 : (f <= 5) ? 5 : 10;
+        return (float) (nice * mag);
+    }
+
+}
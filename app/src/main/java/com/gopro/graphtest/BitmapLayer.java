@@ -0,0 +1,64 @@
+package com.gopro.graphtest;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Offscreen bitmap covering part of a view. It is drawn into in view
+ * coordinates between {@link #begin()} and {@link #end()}, and blitted back
+ * at its position with {@link #draw(Canvas)}.
+ */
+final class BitmapLayer {
+
+    private final Canvas canvas = new Canvas();
+    private Bitmap bitmap;
+    private int left, top;
+
+    /**
+     * Moves the layer; the bitmap is only reallocated if its size changes.
+     */
+    void setBounds(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+
+        int w = right - left;
+        int h = bottom - top;
+        if (w <= 0 || h <= 0) {
+            release();
+            return;
+        }
+        if (bitmap != null && bitmap.getWidth() == w && bitmap.getHeight() == h) return;
+
+        release();
+        bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        canvas.setBitmap(bitmap);
+    }
+
+    /**
+     * Clears the layer and returns a canvas in view coordinates, or null if
+     * the layer is empty.
+     */
+    Canvas begin() {
+        if (bitmap == null) return null;
+        bitmap.eraseColor(0);
+        canvas.save();
+        canvas.translate(-left, -top);
+        return canvas;
+    }
+
+    void end() {
+        canvas.restore();
+    }
+
+    void draw(Canvas target) {
+        if (bitmap != null) target.drawBitmap(bitmap, left, top, null);
+    }
+
+    void release() {
+        if (bitmap == null) return;
+        canvas.setBitmap(null);
+        bitmap.recycle();
+        bitmap = null;
+    }
+
+}
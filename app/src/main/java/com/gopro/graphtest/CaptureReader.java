@@ -0,0 +1,204 @@
+package com.gopro.graphtest;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads back a stream written by {@link CaptureWriter}, block by block or
+ * as a paced replay into a {@link SampleSink}.
+ */
+public final class CaptureReader {
+
+    private final DataInputStream in;
+    private final int numColumns;
+    private final int maxBlock;
+    private final long timeUnitNanos;
+    private final long[] times;
+    private final float[][] cols;
+    private final int[] bits;
+    private final float[] mins, maxs;
+    private byte[] buf = new byte[1024];
+    private int pos, limit;
+    private boolean paused;
+
+    public CaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != CaptureWriter.MAGIC) throw new IOException("Not a capture");
+        int version = this.in.readInt();
+        if (version != CaptureWriter.VERSION) throw new IOException("Unsupported capture version " + version);
+        numColumns = this.in.readInt();
+        maxBlock = this.in.readInt();
+        timeUnitNanos = this.in.readLong();
+        if (numColumns < 1 || maxBlock < 1) throw new IOException("Corrupt capture header");
+
+        times = new long[maxBlock];
+        cols = new float[numColumns][maxBlock];
+        bits = new int[numColumns];
+        mins = new float[numColumns];
+        maxs = new float[numColumns];
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public long getTimeUnitNanos() {
+        return timeUnitNanos;
+    }
+
+    /**
+     * Timestamps of the block last read by {@link #next()}.
+     */
+    public long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * Columns of the block last read by {@link #next()}.
+     */
+    public float[][] getColumns() {
+        return cols;
+    }
+
+    /**
+     * Decodes the next block into {@link #getTimes()} and {@link #getColumns()}.
+     *
+     * @return number of samples in the block, or -1 at the end of the stream
+     */
+    public int next() throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return -1;
+        }
+        if (magic != CaptureWriter.BLOCK_MAGIC) throw new IOException("Corrupt capture block");
+        int n = in.readInt();
+        int length = in.readInt();
+        if (n < 1 || n > maxBlock || length < 0) throw new IOException("Corrupt capture block");
+        long first = in.readLong();
+        in.readLong();
+        for (int col = 0; col < numColumns; col++) {
+            bits[col] = in.readUnsignedByte();
+            mins[col] = Float.intBitsToFloat(in.readInt());
+            maxs[col] = Float.intBitsToFloat(in.readInt());
+        }
+        if (buf.length < length) buf = new byte[length];
+        in.readFully(buf, 0, length);
+        pos = 0;
+        limit = length;
+
+        long t = first, delta = 0;
+        times[0] = first;
+        for (int i = 1; i < n; i++) {
+            delta += unzigzag(getVarLong());
+            t += delta;
+            times[i] = t;
+        }
+
+        for (int col = 0; col < numColumns; col++) {
+            float[] vals = cols[col];
+            int last = 0;
+            if (bits[col] == 0) {
+                for (int i = 0; i < n; i++) {
+                    last += (int) unzigzag(getVarLong());
+                    vals[i] = Float.intBitsToFloat(last);
+                }
+            } else {
+                float min = mins[col];
+                float step = (maxs[col] - min) / ((1 << bits[col]) - 1);
+                for (int i = 0; i < n; i++) {
+                    last += (int) unzigzag(getVarLong());
+                    vals[i] = min + last * step;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Feeds the rest of the stream to sink on the calling thread, paced by
+     * the timestamps. Samples are handed over in the batches that came due
+     * since the last one. The replay can be held with {@link #pause}, and
+     * stops with an InterruptedException when the thread is interrupted.
+     *
+     * @param speed 1 for real time, N for N times faster, 0 or less for as fast
+     *              as the stream can be read
+     * @return number of samples replayed
+     */
+    public long replay(SampleSink sink, double speed) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long t0 = 0;
+        long total = 0;
+        int n;
+        while ((n = next()) >= 0) {
+            if (total == 0) t0 = times[0];
+            total += n;
+            if (speed <= 0) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                awaitResume();
+                sink.appendSamples(times, cols, 0, n);
+                continue;
+            }
+
+            int i = 0;
+            while (i < n) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                /* Time spent paused does not count towards the schedule */
+                start += awaitResume();
+                long elapsed = System.nanoTime() - start;
+                long due = t0 + (long) (elapsed * speed / timeUnitNanos);
+                int j = i;
+                while (j < n && times[j] <= due) j++;
+                if (j > i) {
+                    sink.appendSamples(times, cols, i, j - i);
+                    i = j;
+                } else {
+                    long wait = (long) ((times[i] - t0) * timeUnitNanos / speed) - elapsed;
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Holds or resumes a {@link #replay} running on another thread. A paced
+     * replay picks up where it was held rather than catching up.
+     */
+    public synchronized void pause(boolean isPause) {
+        paused = isPause;
+        if (!isPause) notifyAll();
+    }
+
+    /* Blocks while paused, returning how long that was */
+    private synchronized long awaitResume() throws InterruptedException {
+        if (!paused) return 0;
+        long t = System.nanoTime();
+        while (paused) wait();
+        return System.nanoTime() - t;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private long getVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit) throw new IOException("Corrupt capture block");
+            byte b = buf[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IOException("Corrupt capture block");
+    }
+
+}
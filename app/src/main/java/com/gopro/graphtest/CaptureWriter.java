@@ -0,0 +1,276 @@
+package com.gopro.graphtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timestamped samples to a compact capture stream, read back by
+ * {@link CaptureReader}.
+ * <p>
+ * The stream starts with a header (magic, version, column count, largest
+ * block, nanoseconds per time unit), followed by blocks of up to
+ * {@link #BLOCK_SAMPLES} samples. Each block has its own header: sample
+ * count, payload length, first and last timestamp, and per column the
+ * encoding and the value range. The payload holds the timestamps as zigzag
+ * varints of their second differences, so a steady rate costs one byte per
+ * sample, then each column as zigzag varints of deltas: of the raw float
+ * bits, or with quantization of the values scaled to 8 or 16 bits over the
+ * block's range. Columns holding NaN or infinity are always stored exactly.
+ * <p>
+ * The producer only copies into a pooled block; encoding and writing run on
+ * a thread of their own. If that thread falls {@link #NUM_BLOCKS} blocks
+ * behind, samples are dropped and counted rather than stalling the producer.
+ */
+public final class CaptureWriter implements SampleSink {
+
+    static final int MAGIC = 0x47544350;  // "GTCP"
+    static final int BLOCK_MAGIC = 0x47544342;  // "GTCB"
+    static final int VERSION = 1;
+    static final int BLOCK_SAMPLES = 4096;
+    static final int NUM_BLOCKS = 8;
+
+    private final OutputStream out;
+    private final int numColumns;
+    private final int quantBits;
+    private final ExecutorService ioSvc = Executors.newSingleThreadExecutor();
+    private final ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile IOException failure;
+    private Block block;
+
+    /* Writer thread only */
+    private byte[] buf = new byte[1024];
+    private int pos;
+
+    private static final class Block {
+        final long[] times = new long[BLOCK_SAMPLES];
+        final float[][] cols;
+        int count;
+
+        Block(int numColumns) {
+            cols = new float[numColumns][BLOCK_SAMPLES];
+        }
+    }
+
+    /**
+     * @param timeUnitNanos length of one timestamp unit, used to pace replays
+     * @param quantBits     0 to store values exactly, or 8 or 16 to quantize them
+     */
+    public CaptureWriter(OutputStream out, int numColumns, long timeUnitNanos, int quantBits) {
+        if (numColumns < 1) throw new IllegalArgumentException("numColumns < 1");
+        if (quantBits != 0 && quantBits != 8 && quantBits != 16)
+            throw new IllegalArgumentException("quantBits must be 0, 8 or 16");
+        this.out = out;
+        this.numColumns = numColumns;
+        this.quantBits = quantBits;
+        for (int i = 0; i < NUM_BLOCKS; i++) free.add(new Block(numColumns));
+        block = free.poll();
+
+        pos = 0;
+        putInt(MAGIC);
+        putInt(VERSION);
+        putInt(numColumns);
+        putInt(BLOCK_SAMPLES);
+        putLong(timeUnitNanos);
+        ioSvc.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeOut();
+            }
+        });
+    }
+
+    /**
+     * Copies the samples into the current block, handing it to the writer
+     * thread when full. Producer thread only.
+     */
+    @Override
+    public void appendSamples(long[] times, float[][] src, int offset, int count) {
+        while (count > 0) {
+            if (block == null && (block = free.poll()) == null) {
+                dropped.addAndGet(count);
+                return;
+            }
+            int n = BLOCK_SAMPLES - block.count;
+            if (n > count) n = count;
+            System.arraycopy(times, offset, block.times, block.count, n);
+            for (int col = 0; col < numColumns; col++) {
+                System.arraycopy(src[col], offset, block.cols[col], block.count, n);
+            }
+            block.count += n;
+            offset += n;
+            count -= n;
+            if (block.count == BLOCK_SAMPLES) flush();
+        }
+    }
+
+    /**
+     * Hands the current, partly filled block to the writer thread. Producer
+     * thread only.
+     */
+    public void flush() {
+        final Block full = block;
+        if (full == null || full.count == 0) return;
+        block = free.poll();
+        ioSvc.execute(new Runnable() {
+            @Override
+            public void run() {
+                encode(full);
+                writeOut();
+                full.count = 0;
+                free.add(full);
+            }
+        });
+    }
+
+    /**
+     * Writes what is left, waits for the writer thread and closes the stream.
+     *
+     * @throws IOException the first error the writer thread ran into, if any
+     */
+    public void close() throws IOException {
+        flush();
+        ioSvc.shutdown();
+        try {
+            ioSvc.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Samples lost because the writer thread fell behind.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getBytesWritten() {
+        return written.get();
+    }
+
+    private void writeOut() {
+        if (failure == null) {
+            try {
+                out.write(buf, 0, pos);
+                written.addAndGet(pos);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        pos = 0;
+    }
+
+    private void encode(Block b) {
+        int n = b.count;
+        putInt(BLOCK_MAGIC);
+        putInt(n);
+        int lengthAt = pos;
+        putInt(0);
+        putLong(b.times[0]);
+        putLong(b.times[n - 1]);
+
+        int headerAt = pos;
+        ensure(numColumns * 9);
+        pos += numColumns * 9;
+        int payloadAt = pos;
+
+        long prev = b.times[0], delta = 0;
+        for (int i = 1; i < n; i++) {
+            long d = b.times[i] - prev;
+            putVarLong(zigzag(d - delta));
+            delta = d;
+            prev = b.times[i];
+        }
+
+        for (int col = 0; col < numColumns; col++) {
+            float[] vals = b.cols[col];
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            boolean finite = true;
+            for (int i = 0; i < n; i++) {
+                float v = vals[i];
+                if (v != v || v == Float.POSITIVE_INFINITY || v == Float.NEGATIVE_INFINITY) finite = false;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            int bits = finite ? quantBits : 0;
+
+            int at = pos;
+            pos = headerAt + col * 9;
+            putByte(bits);
+            putInt(Float.floatToRawIntBits(min));
+            putInt(Float.floatToRawIntBits(max));
+            pos = at;
+
+            if (bits == 0) {
+                int last = 0;
+                for (int i = 0; i < n; i++) {
+                    int v = Float.floatToRawIntBits(vals[i]);
+                    putVarLong(zigzag(v - last));
+                    last = v;
+                }
+            } else {
+                float scale = (max > min) ? ((1 << bits) - 1) / (max - min) : 0F;
+                int last = 0;
+                for (int i = 0; i < n; i++) {
+                    int q = Math.round((vals[i] - min) * scale);
+                    putVarLong(zigzag(q - last));
+                    last = q;
+                }
+            }
+        }
+
+        int end = pos;
+        pos = lengthAt;
+        putInt(end - payloadAt);
+        pos = end;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private void ensure(int bytes) {
+        if (pos + bytes > buf.length) {
+            byte[] grown = new byte[Math.max(buf.length * 2, pos + bytes)];
+            System.arraycopy(buf, 0, grown, 0, pos);
+            buf = grown;
+        }
+    }
+
+    private void putByte(int v) {
+        ensure(1);
+        buf[pos++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        ensure(4);
+        buf[pos++] = (byte) (v >>> 24);
+        buf[pos++] = (byte) (v >>> 16);
+        buf[pos++] = (byte) (v >>> 8);
+        buf[pos++] = (byte) v;
+    }
+
+    private void putLong(long v) {
+        putInt((int) (v >>> 32));
+        putInt((int) v);
+    }
+
+    private void putVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+}
@@ -0,0 +1,336 @@
+package com.gopro.graphtest;
+
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+
+/**
+ * Android-free core of the chart: the series, the x window math and the
+ * render passes that turn the visible window into {@link PointFrame}s.
+ * DataView drives it from its UI and render threads; on a plain JVM it can
+ * be driven directly and drawn with {@link #rasterize}.
+ * <p>
+ * {@link #render} must only run on one thread at a time; the front frame
+ * may be read from any one other thread.
+ */
+final class ChartEngine {
+
+    static final int CHANGED_XOFF = (1 << 0);
+    static final int CHANGED_XRANGE = (1 << 1);
+    static final int CHANGED_YRANGE = (1 << 2);
+
+    private final SeriesRegistry series = new SeriesRegistry();
+    private final ChartStats stats = new ChartStats();
+    private final TripleBuffer<PointFrame> frames = new TripleBuffer<PointFrame>(
+            new PointFrame(), new PointFrame(), new PointFrame());
+    private final float[] xPts = new float[LineBuilder.MAX_HORZ_POINTS + 1];
+    private final TileCache tiles = new TileCache(0);
+    private final TaskGroup lineTasks;
+    private final RenderTask[] renderTasks;
+    private int[] renderLines = new int[0];
+    private volatile boolean timeBased;
+    private volatile int decimation = Decimator.MODE_STRIDE;
+    private volatile int lineMode = LineBuilder.MODE_SEGMENTS;
+    private volatile boolean cancelled;
+
+    /* Render thread only */
+    private int renderGen;
+    private int passLineMode = LineBuilder.MODE_SEGMENTS;
+    private int width, height, xRange, numLines;
+    private long xOffs, xSize, shift;
+    private boolean passTimeBased, passCoarse;
+    private PointFrame frame;
+
+    /**
+     * @param workers     runs the share of each pass the calling thread does not
+     * @param parallelism most tasks a pass is split into, counting the caller
+     */
+    ChartEngine(Executor workers, int parallelism) {
+        lineTasks = new TaskGroup(workers, parallelism);
+        renderTasks = new RenderTask[parallelism];
+        for (int i = 0; i < parallelism; i++) renderTasks[i] = new RenderTask(i);
+    }
+
+    SeriesRegistry getSeries() {
+        return series;
+    }
+
+    ChartStats getStats() {
+        return stats;
+    }
+
+    void setSource(int lineNum, SampleSource store, int column) {
+        series.obtain(lineNum).setSource(store, column);
+        /* Tiles of a source that is gone would keep it alive */
+        if (tiles.isEnabled()) tiles.clear();
+        boolean allTimed = true;
+        for (Series s : series.getAll()) {
+            SampleSource src = s.store();
+            if (src != null && !src.hasTimes()) allTimed = false;
+        }
+        timeBased = allTimed;
+    }
+
+    /**
+     * True if every series is timestamped, in which case x positions, offsets
+     * and ranges are in the units of the timestamps instead of sample indices.
+     */
+    boolean isTimeBased() {
+        return timeBased;
+    }
+
+    void setDecimation(int mode) {
+        decimation = mode;
+    }
+
+    /**
+     * LineBuilder.MODE_SEGMENTS for drawLines segments, or MODE_STRIP for
+     * polylines with each vertex stored once.
+     */
+    void setLineMode(int mode) {
+        lineMode = mode;
+    }
+
+    /**
+     * Bytes of decimated tiles kept for windows that come back into view; 0,
+     * the default, decimates every window afresh.
+     */
+    void setTileCacheBytes(long bytes) {
+        tiles.setMaxBytes(bytes);
+    }
+
+    /**
+     * One past the newest sample index, or timestamp.
+     */
+    long xEnd() {
+        long end = 0;
+        for (Series s : series.getAll()) {
+            SampleSource store = s.store();
+            if (store == null) continue;
+            long count = store.getCount();
+            if (timeBased && count > 0) count = store.getTime(count - 1) + 1;
+            if (count > end) end = count;
+        }
+        return end;
+    }
+
+    /**
+     * Keeps the window clear of the oldest part of each ring, which the
+     * producer is about to overwrite.
+     */
+    long clampXOffs(long xOffs) {
+        long min = 0;
+        for (Series s : series.getAll()) {
+            SampleSource store = s.store();
+            if (store == null) continue;
+            long first = store.getFirst();
+            if (first > 0) first += store.getCapacity() >> 4;
+            if (timeBased && first > 0) first = store.getTime(first);
+            if (first > min) min = first;
+        }
+        return (xOffs < min) ? min : xOffs;
+    }
+
+    /**
+     * Abandons the full-detail pass that is running, or the next one to
+     * start, because the window it was given is already stale. May be
+     * called from any thread. Coarse passes always run to the end, so a
+     * gesture keeps getting frames however often it moves.
+     */
+    void cancelPass() {
+        cancelled = true;
+    }
+
+    /**
+     * Builds the window into the back frame and publishes it, in full detail.
+     */
+    boolean render(long xOffs, int xRange, long xSize, int width, int height, int changed) {
+        return render(xOffs, xRange, xSize, width, height, changed, false);
+    }
+
+    /**
+     * Builds the window into the back frame and publishes it.
+     *
+     * @param changed CHANGED_* bits since the last pass
+     * @param coarse  decimate to fewer columns, for a pass that only has to
+     *                keep up with a gesture
+     * @return false if the producer lapped the window while it was read, or
+     * the pass was cancelled; nothing was published then and the pass should
+     * be run again
+     */
+    boolean render(long xOffs, int xRange, long xSize, int width, int height, int changed, boolean coarse) {
+        long start = System.nanoTime();
+        long stamp = stats.getPendingSince();
+        this.xOffs = xOffs;
+        this.xRange = xRange;
+        this.xSize = xSize;
+        this.width = width;
+        this.height = height;
+        passTimeBased = timeBased;
+        frame = frames.getBack();
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
+
+        /* Frames of the other mode, or detail, cannot be reused */
+        int mode = lineMode;
+        if ((changed & ~CHANGED_XOFF) != 0 || mode != passLineMode || coarse != passCoarse) renderGen++;
+        passLineMode = mode;
+        passCoarse = coarse;
+        if ((changed & CHANGED_XRANGE) != 0) LineBuilder.calcXPts(xPts, xRange, width);
+
+        /*
+         * The back frame is a few passes old; if only xOffs or xSize moved
+         * since, bring it up to date with just the new segments.
+         */
+        boolean sameGen = (frame.gen == renderGen);
+        shift = sameGen ? (xOffs - frame.xOffs) : -1;
+        frame.dx = xPts[1] - xPts[0];
+        frame.strip = (mode == LineBuilder.MODE_STRIP);
+        frame.ensureLines(all.length);
+
+        /* Disabled lines are dropped so they start from scratch when enabled again */
+        if (renderLines.length < all.length) renderLines = new int[all.length];
+        numLines = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (enabled.get(i) && all[i].source != null)
+                renderLines[numLines++] = i;
+            else
+                frame.lineSegs[i] = 0;
+        }
+
+        int numTasks = (numLines < renderTasks.length) ? numLines : renderTasks.length;
+        for (int t = 0; t < numTasks; t++) renderTasks[t].begin(all, numTasks);
+        lineTasks.invokeAll(renderTasks, numTasks);
+
+        /* Any cancel so far is spent on this pass, the only one it can be meant for */
+        boolean stale = cancelled && !coarse;
+        cancelled = false;
+        if (stale || !isIntact(all)) {
+            frame.gen = -1;
+            if (stale) stats.cancelled(); else stats.retried();
+            stats.record(ChartStats.STAGE_RENDER, start);
+            return false;
+        }
+        frame.xOffs = xOffs;
+        frame.gen = renderGen;
+        frame.dataNanos = stamp;
+        frames.publish();
+        stats.record(ChartStats.STAGE_RENDER, start);
+        return true;
+    }
+
+    /**
+     * Has every source page in what a window over x [xFrom, xTo) will read,
+     * so the pass that gets there does not stall on storage. Render thread
+     * only, between passes.
+     */
+    void prefetch(long xFrom, long xTo) {
+        Series[] all = series.getAll();
+        for (int i = 0; i < all.length; i++) {
+            Series s = all[i];
+            SampleSource store = s.store();
+            if (store == null || sharesStore(all, i)) continue;
+            long from = xFrom, to = xTo;
+            if (timeBased) {
+                from = store.search(xFrom, s.winFrom);
+                to = store.search(xTo, s.winTo);
+            }
+            store.prefetch(from, to);
+        }
+    }
+
+    PointFrame getFront() {
+        return frames.getFront();
+    }
+
+    /**
+     * Draws the lines of the front frame, each in its series colour, the same
+     * way DataView.onDraw does.
+     */
+    void rasterize(Raster raster, float strokeWidth) {
+        long start = System.nanoTime();
+        PointFrame frame = frames.getFront();
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
+        int numLines = (frame.getNumLines() < all.length) ? frame.getNumLines() : all.length;
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < numLines; i = enabled.nextSetBit(i + 1)) {
+            int segs = frame.lineSegs[i];
+            int head = frame.heads[i];
+            if (segs <= 0) continue;
+
+            int color = all[i].color;
+            if (frame.strip) {
+                raster.drawStrip(frame.points[i], segs + 1, color, strokeWidth);
+                continue;
+            }
+
+            /* Oldest part of the ring first, then the wrapped-around newest part */
+            raster.drawLines(frame.points[i], head << 2, (segs - head) << 2,
+                    -head * frame.dx, color, strokeWidth);
+            if (head > 0) {
+                raster.drawLines(frame.points[i], 0, head << 2,
+                        (segs - head) * frame.dx, color, strokeWidth);
+            }
+        }
+        stats.record(ChartStats.STAGE_DRAW, start);
+        stats.drawn(frame.dataNanos);
+        frame.dataNanos = 0;
+    }
+
+    /* Series i reads the same source as one before it */
+    static boolean sharesStore(Series[] all, int i) {
+        for (int j = 0; j < i; j++) {
+            if (all[j].store() == all[i].store()) return true;
+        }
+        return false;
+    }
+
+    private boolean isIntact(Series[] all) {
+        if (!passTimeBased) {
+            for (Series s : all) {
+                SampleSource store = s.store();
+                if (store != null && !store.isIntact(xOffs)) return false;
+            }
+            return true;
+        }
+        for (int k = 0; k < numLines; k++) {
+            Series s = all[renderLines[k]];
+            SampleSource store = s.store();
+            if (store != null && !store.isIntact(s.winFrom)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the segments of every stride-th enabled line of a pass. Each task
+     * has its own builder, and no two tasks share a line.
+     */
+    private class RenderTask implements Runnable {
+        private final int index;
+        private final LineBuilder builder = new LineBuilder();
+        private Series[] all;
+        private int stride;
+
+        RenderTask(int index) {
+            this.index = index;
+        }
+
+        void begin(Series[] all, int stride) {
+            this.all = all;
+            this.stride = stride;
+        }
+
+        @Override
+        public void run() {
+            builder.setDecimation(decimation);
+            builder.setLineMode(passLineMode);
+            builder.setCoarse(passCoarse);
+            builder.setTileCache(tiles.isEnabled() ? tiles : null);
+            builder.setViewport(xPts, width, height, xOffs, xRange, xSize, passTimeBased);
+            for (int k = index; k < numLines; k += stride) {
+                if (cancelled && !passCoarse) break;
+                builder.build(frame, all[renderLines[k]], shift);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.gopro.graphtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always-on counters and latency histograms for each stage of the chart
+ * pipeline, cheap enough to leave running in production. Every method may
+ * be called from any thread.
+ * <p>
+ * Sample-to-pixel latency runs from the publish of the oldest sample not
+ * yet on screen to the end of the first DataView.onDraw of a frame that
+ * holds it, so it is recorded about once per drawn frame.
+ */
+final class ChartStats {
+
+    static final int STAGE_INGEST = 0;
+    static final int STAGE_QUEUE = 1;
+    static final int STAGE_RENDER = 2;
+    static final int STAGE_RASTER = 3;
+    static final int STAGE_DRAW = 4;
+    static final int STAGE_LABELS = 5;
+    static final int STAGE_LATENCY = 6;
+    static final int NUM_STAGES = 7;
+
+    private static final String[] STAGE_NAMES = {"ingest", "queue", "render", "raster", "draw", "labels",
+            "latency"};
+
+    private final Histogram[] stages = new Histogram[NUM_STAGES];
+    private final Histogram queueDepth = new Histogram();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong cancels = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong pendingSince = new AtomicLong();
+
+    ChartStats() {
+        for (int i = 0; i < NUM_STAGES; i++) stages[i] = new Histogram();
+    }
+
+    Histogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    /**
+     * Records how long a stage took, given System.nanoTime() at its start.
+     */
+    void record(int stage, long startNanos) {
+        stages[stage].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * A batch of count samples was published; startNanos is when ingesting
+     * it began.
+     */
+    void ingested(int count, long startNanos) {
+        long now = System.nanoTime();
+        stages[STAGE_INGEST].record(now - startNanos);
+        samples.addAndGet(count);
+        pendingSince.compareAndSet(0, now);
+    }
+
+    /**
+     * Publish time of the oldest sample not yet drawn, or 0; a render pass
+     * stamps its frame with this when it starts.
+     */
+    long getPendingSince() {
+        return pendingSince.get();
+    }
+
+    /**
+     * A frame stamped with {@link #getPendingSince()} has been drawn.
+     */
+    void drawn(long stamp) {
+        if (stamp == 0) return;
+        stages[STAGE_LATENCY].record(System.nanoTime() - stamp);
+        pendingSince.compareAndSet(stamp, 0);
+    }
+
+    void retried() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * A pass was dropped because its window went stale.
+     */
+    void cancelled() {
+        cancels.incrementAndGet();
+    }
+
+    /**
+     * A task was handed to the render executor.
+     */
+    void enqueued() {
+        queueDepth.record(queued.incrementAndGet());
+    }
+
+    /**
+     * A render task started running, enqueuedNanos being when it was handed over.
+     */
+    void dequeued(long enqueuedNanos) {
+        queued.decrementAndGet();
+        record(STAGE_QUEUE, enqueuedNanos);
+    }
+
+    int getQueueDepth() {
+        return queued.get();
+    }
+
+    long getSampleCount() {
+        return samples.get();
+    }
+
+    long getRetryCount() {
+        return retries.get();
+    }
+
+    long getCancelCount() {
+        return cancels.get();
+    }
+
+    void reset() {
+        for (Histogram h : stages) h.reset();
+        queueDepth.reset();
+        samples.set(0);
+        retries.set(0);
+        cancels.set(0);
+    }
+
+    /**
+     * One line per stage with its count and p50/p99/max in microseconds,
+     * then the counters.
+     */
+    String[] dump() {
+        String[] lines = new String[NUM_STAGES + 1];
+        for (int i = 0; i < NUM_STAGES; i++) {
+            Histogram h = stages[i];
+            lines[i] = String.format("%-8s n=%d p50=%d p99=%d max=%d us", STAGE_NAMES[i], h.getCount(),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentile(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentile(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getMax()));
+        }
+        lines[NUM_STAGES] = String.format("samples=%d retries=%d cancels=%d queue=%d (max %d)",
+                samples.get(), retries.get(), cancels.get(), queued.get(), queueDepth.getMax());
+        return lines;
+    }
+
+}
@@ -8,16 +8,23 @@ import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.os.SystemClock;
 import android.util.TypedValue;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.FrameLayout;
 
-import java.text.DecimalFormat;
+import java.util.BitSet;
 
-public class ChartView extends View {
+public class ChartView extends View implements SampleSink {
 
-    public static final int MAX_DATA_LINES = 3;
+    public static final int DECIMATION_STRIDE = Decimator.MODE_STRIDE;
+    public static final int DECIMATION_M4 = Decimator.MODE_M4;
+    public static final int DECIMATION_LTTB = Decimator.MODE_LTTB;
+
+    /* Separate segments for Canvas.drawLines, or one Path per line with each vertex stored once */
+    public static final int LINE_MODE_SEGMENTS = LineBuilder.MODE_SEGMENTS;
+    public static final int LINE_MODE_STRIP = LineBuilder.MODE_STRIP;
 
     private static final String TAG = "~CanvasView";
 
@@ -41,12 +48,14 @@ public class ChartView extends View {
     private static final int YVAL_SPACING_DP = 55;
     private static final int YVAL_VERT_MARGIN_DP = 15;
     private static final int YVAL_STACK_VERT_DP = 280;
+    private static final int OVERLAY_REFRESH_MS = 500;
 
     private static final int CHANGED_GRID = (1 << 0);
     private static final int CHANGED_YLABELS = (1 << 1);
     private static final int CHANGED_XLABELS = (1 << 2);
     private static final int CHANGED_LEGEND = (1 << 3);
-    private static final int CHANGED_YVALS = (1 << 4);
+
+    private static final char[] NO_YVAL_TEXT = "[ - ]".toCharArray();
 
     //private static final int REFRESH_INTERVAL = 100;
 
@@ -55,13 +64,8 @@ public class ChartView extends View {
     private final Paint divTextPaintL, divTextPaintR;
     private final Paint markerPaint;
     private final Paint yValTextPaint;
-    private final float[][] yVals = new float[MAX_DATA_LINES][];
-    private final float[] yMin = new float[MAX_DATA_LINES];
-    private final float[] yMax = new float[MAX_DATA_LINES];
-    private final float[] yRange = new float[MAX_DATA_LINES];
-    private final String[] lineLabels = new String[MAX_DATA_LINES];
-    private final float[] lineLabelsWidth = new float[MAX_DATA_LINES];
-    private final int[] lineColors = new int[MAX_DATA_LINES];
+    private final Paint overlayPaintFG, overlayPaintBG;
+    private final SeriesRegistry series;
     private final float[] divisionPts = new float[MAX_DIV_LINES * 4];
     private final DisplayMetrics displayMetrics;
     private final int marginChartName;
@@ -71,8 +75,8 @@ public class ChartView extends View {
     private final int dvYOffs;
     private String chartName;
     private int width, height;
-    private int lineEnable;
-    private int xSize, xRange, xOffs, xRightMost;
+    private int xRange;
+    private long xSize, xOffs, xRightMost;
     private float xDispScale;
     private int dvXOffsL, dvXOffsR;
     private int dvWidth, dvHeight;
@@ -80,13 +84,24 @@ public class ChartView extends View {
     private final Rect chartNameRect = new Rect();
     private final Rect rect = new Rect();
     private final RectF chartNameRectF = new RectF();
-    private final DecimalFormat yValFormat = new DecimalFormat("0.0E0");
-    private final DecimalFormat xValFormat = new DecimalFormat("0.00E0");
+    private final LabelFormatter yValFormat = new LabelFormatter(1);
+    private final LabelFormatter xValFormat = new LabelFormatter(2);
+    private final char[] textBuf = new char[LabelFormatter.MAX_LENGTH + 4];
+    private final float[] divTextAdvances = new float[128];
+    private float divTextHeight;
+    private final BitmapLayer staticLayer = new BitmapLayer();
+    private final BitmapLayer xLabelLayer = new BitmapLayer();
+    private final BitmapLayer yLabelLayerL = new BitmapLayer();
+    private final BitmapLayer yLabelLayerR = new BitmapLayer();
     private final DataView dataView;
+    private long[] appendEnds = new long[0];
     private FrameLayout.LayoutParams dataViewLayParams;
     private int leftLineNum, rightLineNum;
     private int changed;
     private boolean yValStackVert;
+    private boolean debugOverlay;
+    private String[] overlayLines;
+    private long overlayTime;
     //private RefreshThread refreshThread;
 
     public ChartView(Context context, AttributeSet attrs) {
@@ -107,6 +122,7 @@ public class ChartView extends View {
 
         dataView = new DataView(context);
         dataView.setChartView(this);
+        series = dataView.getSeries();
 
         chartNamePaintFG = new Paint(Paint.ANTI_ALIAS_FLAG);
         chartNamePaintFG.setColor(0xFF000000);
@@ -137,6 +153,31 @@ public class ChartView extends View {
 
         yValTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         yValTextPaint.setTextSize(dpToPx(DIV_TEXT_SIZE));
+
+        overlayPaintFG = new Paint(Paint.ANTI_ALIAS_FLAG);
+        overlayPaintFG.setColor(0xFFFFFFFF);
+        overlayPaintFG.setTextSize(dpToPx(DIV_TEXT_SIZE));
+
+        overlayPaintBG = new Paint();
+        overlayPaintBG.setColor(0xA0000000);
+        overlayPaintBG.setStyle(Paint.Style.FILL);
+
+        calcDivTextMetrics();
+    }
+
+    /*
+     * Labels are all digits and a few symbols, so measure those once instead
+     * of calling getTextBounds for every label.
+     */
+    private void calcDivTextMetrics() {
+        StringBuilder ascii = new StringBuilder();
+        for (char c = ' '; c < divTextAdvances.length; c++) ascii.append(c);
+        float[] widths = new float[ascii.length()];
+        divTextPaintL.getTextWidths(ascii.toString(), widths);
+        System.arraycopy(widths, 0, divTextAdvances, ' ', widths.length);
+
+        divTextPaintL.getTextBounds("0.0E0", 0, 5, rect);
+        divTextHeight = rect.height();
     }
 
     @Override
@@ -163,6 +204,11 @@ public class ChartView extends View {
         Log.i(TAG, "onDetachedFromWindow: RAN!");
         super.onDetachedFromWindow();
 
+        staticLayer.release();
+        xLabelLayer.release();
+        yLabelLayerL.release();
+        yLabelLayerR.release();
+
         //refreshThread.interrupt();
         //refreshThread = null;
     }
@@ -190,7 +236,19 @@ public class ChartView extends View {
 
         calcChartRect();
         calcDivisions();
-        changed |= CHANGED_GRID;
+        layoutLayers();
+    }
+
+    /*
+     * Grid, chart name and legend share one full-size layer; the axis labels
+     * get strips of their own since they change with the window.
+     */
+    private void layoutLayers() {
+        staticLayer.setBounds(0, 0, width, height);
+        xLabelLayer.setBounds(0, dvHeight, width, height);
+        yLabelLayerL.setBounds(0, 0, dvXOffsL, height);
+        yLabelLayerR.setBounds(width - dvXOffsR, 0, width, height);
+        changed |= CHANGED_GRID | CHANGED_LEGEND | CHANGED_XLABELS | CHANGED_YLABELS;
     }
 
     private void calcDivisions() {
@@ -219,34 +277,56 @@ public class ChartView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
         super.onDraw(canvas);
         //canvas.drawRect(0, 0, width, height, divisionPaint);
 
-        /* Draw Graph Grid and Chart Name */
-        if ((changed & CHANGED_GRID) != 0) {
-            canvas.drawLines(divisionPts, 0, NUM_DIV_LINES << 2, divisionPaint);
-            drawChartName(canvas);
+        Canvas layer;
+
+        /* Rebuild whatever changed, then blit all layers */
+        if ((changed & (CHANGED_GRID | CHANGED_LEGEND)) != 0) {
+            if ((layer = staticLayer.begin()) != null) {
+                /* Draw Graph Grid and Chart Name */
+                layer.drawLines(divisionPts, 0, NUM_DIV_LINES << 2, divisionPaint);
+                drawChartName(layer);
+                drawGraphLegend(layer);
+                staticLayer.end();
+            }
         }
 
-        if ((changed & CHANGED_XLABELS) != 0)
-            drawHorzDivText(canvas);
+        if ((changed & CHANGED_XLABELS) != 0) {
+            if ((layer = xLabelLayer.begin()) != null) {
+                drawHorzDivText(layer);
+                xLabelLayer.end();
+            }
+        }
 
         if ((changed & CHANGED_YLABELS) != 0) {
-            if ((dvXOffsL > 0)) drawVertDivTextL(canvas);
-            if ((dvXOffsR > 0)) drawVertDivTextR(canvas);
+            if ((layer = yLabelLayerL.begin()) != null) {
+                drawVertDivTextL(layer);
+                yLabelLayerL.end();
+            }
+            if ((layer = yLabelLayerR.begin()) != null) {
+                drawVertDivTextR(layer);
+                yLabelLayerR.end();
+            }
         }
 
-        if ((changed & CHANGED_LEGEND) != 0)
-            drawGraphLegend(canvas);
+        changed = 0;
 
-        if ((changed & CHANGED_YVALS) != 0) {
-            if (yValStackVert)
-                drawLastYValVert(canvas);
-            else
-                drawLastYValHorz(canvas);
+        staticLayer.draw(canvas);
+        xLabelLayer.draw(canvas);
+        yLabelLayerL.draw(canvas);
+        yLabelLayerR.draw(canvas);
 
-        }
+        /* Live values change every frame, so they are drawn directly */
+        if (yValStackVert)
+            drawLastYValVert(canvas);
+        else
+            drawLastYValHorz(canvas);
 
+        dataView.getStats().record(ChartStats.STAGE_LABELS, start);
+        if (debugOverlay) drawDebugOverlay(canvas);
     }
 
     @Override
@@ -259,34 +339,39 @@ public class ChartView extends View {
         chartNamePaintFG.getTextBounds(chartName, 0, chartName.length(), chartNameRect);
         chartNameHeight = chartNameRect.height();
         calcChartRect();
+        changed |= CHANGED_GRID;
     }
 
     public void enableLine(int lineNum, boolean enable) {
-        if (enable)
-            this.lineEnable |= (1 << lineNum);
-        else
-            this.lineEnable &= ~(1 << lineNum);
-        dataView.enableLine(lineEnable);
+        dataView.enableLine(lineNum, enable);
+        changed |= CHANGED_LEGEND;
     }
 
     public void setLineLabel(int lineNum, String label) {
-        lineLabels[lineNum] = label;
+        Series s = series.obtain(lineNum);
+        s.label = label;
         divTextPaintL.getTextBounds(label, 0, label.length(), rect);
-        lineLabelsWidth[lineNum] = rect.width();
+        s.labelWidth = rect.width();
         changed |= CHANGED_LEGEND;
     }
 
     public void setLineColor(int lineNum, int color) {
         dataView.setLineColor(lineNum, color);
-        lineColors[lineNum] = color;
+        series.obtain(lineNum).color = color;
         changed |= CHANGED_LEGEND;
     }
 
     public void setYMinMax(int lineNum, float yMin, float yMax) {
         dataView.setYMinMax(lineNum, yMin, yMax);
-        this.yMin[lineNum] = yMin;
-        this.yMax[lineNum] = yMax;
-        yRange[lineNum] = yMax - yMin;
+        changed |= CHANGED_YLABELS;
+    }
+
+    /**
+     * Fits the y range of a line to its visible data, within its absolute
+     * bounds; see {@link DataView#setAutoRange}.
+     */
+    public void setAutoRange(int lineNum, boolean enable) {
+        dataView.setAutoRange(lineNum, enable);
     }
 
     public void setYAbsMinMax(int lineNum, float yAbsMin, float yAbsMax) {
@@ -296,29 +381,57 @@ public class ChartView extends View {
     public void setXRange(int xRange) {
         dataView.setXRange(xRange);
         this.xRange = xRange;
+        changed |= CHANGED_XLABELS;
     }
 
-    public void setXOffs(int xOffs) {
+    public void setXOffs(long xOffs) {
         dataView.setXOffs(xOffs);
         this.xOffs = (xOffs < 0) ? 0 : xOffs;
+        changed |= CHANGED_XLABELS;
     }
 
-    public void setXSize(int xSize) {
-        dataView.setXSize(xSize);
-        this.xSize = xSize;
+    public void setYVals(int lineNum, SampleSource store, int column) {
+        dataView.setYVals(lineNum, store, column);
+        xSize = dataView.getXSize();
+    }
+
+    public void setDecimation(int mode) {
+        dataView.setDecimation(mode);
+    }
+
+    /**
+     * Bytes of decimated history kept so that panning back over it is a copy
+     * instead of a new reduction; only used with DECIMATION_M4 over series
+     * without timestamps, so it is off (0) by default.
+     */
+    public void setTileCacheSize(long bytes) {
+        dataView.setTileCacheSize(bytes);
     }
 
-    public void setXMaxSize(int xMaxSize) {
-        dataView.setXMaxSize(xMaxSize);
+    public void setLineMode(int mode) {
+        dataView.setLineMode(mode);
     }
 
-    public void setYVals(int lineNum, float[] yVals) {
-        dataView.setYVals(lineNum, yVals);
-        this.yVals[lineNum] = yVals;
+    /**
+     * Draws the lines into a bitmap on the render thread instead of in
+     * onDraw, for devices where drawing them on the UI thread causes jank.
+     */
+    public void setRenderToBitmap(boolean enable) {
+        dataView.setRenderToBitmap(enable);
+    }
+
+    /**
+     * While a pan or pinch is under way the lines are decimated coarsely, so
+     * passes keep up with the finger; once input has been idle this long they
+     * are drawn again in full detail. 0 always draws full detail.
+     */
+    public void setRefineDelay(long ms) {
+        dataView.setRefineDelay(ms);
     }
 
     public void setXDispScale(float xDispScale) {
         this.xDispScale = xDispScale;
+        changed |= CHANGED_XLABELS;
     }
 
     public void update() {
@@ -329,7 +442,104 @@ public class ChartView extends View {
 
     public void incUpdate() {
         dataView.incUpdate();
-        xSize++;
+    }
+
+    /**
+     * Shows the pipeline statistics of {@link #dumpStats()} over the chart.
+     */
+    public void setDebugOverlay(boolean enable) {
+        debugOverlay = enable;
+        overlayLines = null;
+        chartInvalidate();
+    }
+
+    /**
+     * Snapshot of the pipeline statistics: per stage latency percentiles,
+     * sample and retry counts, render queue depth and render scheduling.
+     */
+    public String dumpStats() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : statsLines()) sb.append(line).append('\n');
+        return sb.toString();
+    }
+
+    public void resetStats() {
+        dataView.getStats().reset();
+    }
+
+    private String[] statsLines() {
+        String[] stats = dataView.getStats().dump();
+        RenderScheduler scheduler = dataView.getRenderScheduler();
+        String[] lines = new String[stats.length + 1];
+        System.arraycopy(stats, 0, lines, 0, stats.length);
+        lines[stats.length] = String.format("requests=%d frames=%d merged=%d dropped=%d",
+                scheduler.getRequestCount(), scheduler.getFrameCount(),
+                scheduler.getMergedCount(), scheduler.getDroppedCount());
+        return lines;
+    }
+
+    /**
+     * Appends count samples to every series with a writable source,
+     * block[lineNum][offset + i] being sample i of series lineNum, then
+     * publishes them and asks for a single redraw. Call from the producer
+     * thread only.
+     *
+     * @throws IllegalStateException if a series has a timestamped store,
+     *                               which must be fed through
+     *                               {@link #appendSamples(long[], float[][], int, int)}
+     */
+    public void appendSamples(float[][] block, int offset, int count) {
+        Series[] all = series.getAll();
+        int num = (block.length < all.length) ? block.length : all.length;
+        for (int i = 0; i < num; i++) {
+            WritableSampleSource store = writable(all[i].source);
+            if (store != null && store.hasTimes())
+                throw new IllegalStateException("Series " + i + " is timestamped; append with times");
+        }
+        appendSamples(block, offset, count, System.nanoTime());
+    }
+
+    private void appendSamples(float[][] block, int offset, int count, long start) {
+        Series[] all = series.getAll();
+        int num = (block.length < all.length) ? block.length : all.length;
+        if (appendEnds.length < num) appendEnds = new long[num];
+
+        /* Write everything first; series sharing a store share its publish */
+        for (int i = 0; i < num; i++) {
+            Series.Source src = all[i].source;
+            WritableSampleSource store = writable(src);
+            if (store == null) continue;
+            appendEnds[i] = store.getCount() + count;
+            store.write(src.column, block[i], offset, count);
+        }
+        for (int i = 0; i < num; i++) {
+            WritableSampleSource store = writable(all[i].source);
+            if (store != null) store.publish(appendEnds[i]);
+        }
+        dataView.getStats().ingested(count, start);
+        dataView.incUpdate();
+    }
+
+    /**
+     * Same as {@link #appendSamples(float[][], int, int)} for timestamped
+     * stores, times[offset + i] being the timestamp of sample i.
+     */
+    @Override
+    public void appendSamples(long[] times, float[][] block, int offset, int count) {
+        long start = System.nanoTime();
+        Series[] all = series.getAll();
+        int num = (block.length < all.length) ? block.length : all.length;
+        for (int i = 0; i < num; i++) {
+            WritableSampleSource store = writable(all[i].source);
+            if (store == null || ChartEngine.sharesStore(all, i)) continue;
+            store.writeTimes(times, offset, count);
+        }
+        appendSamples(block, offset, count, start);
+    }
+
+    /* Read-only sources, such as recordings, are fed by their owner */
+    private static WritableSampleSource writable(Series.Source src) {
+        return (src != null && src.store instanceof WritableSampleSource) ? (WritableSampleSource) src.store : null;
     }
 
     public void setLeftRight(int leftLineNum, int rightLineNum) {
@@ -344,28 +554,30 @@ public class ChartView extends View {
 
         calcChartRect();
         calcDivisions();
-        changed |= CHANGED_GRID | CHANGED_YVALS | CHANGED_YLABELS;
+        layoutLayers();
     }
 
-    public void updateXRangeXOffs(int xRange, int xOffs) {
+    public void updateXRangeXOffs(int xRange, long xOffs) {
         this.xRange = xRange;
         this.xOffs = xOffs;
         xRightMost = xOffs + xRange;
-        changed |= CHANGED_XLABELS | CHANGED_YVALS;
+        changed |= CHANGED_XLABELS;
         chartInvalidate();
     }
 
-    public void updateXOffs(int xOffs) {
+    public void updateXSize(long xSize) {
+        this.xSize = xSize;
+        chartInvalidate();
+    }
+
+    public void updateXOffs(long xOffs) {
         this.xOffs = xOffs;
         xRightMost = xOffs + xRange;
-        changed |= CHANGED_XLABELS | CHANGED_YVALS;
+        changed |= CHANGED_XLABELS;
         chartInvalidate();
     }
 
-    public void updateYMinMaxRange(float[] yMin, float[] yMax, float[] yRange) {
-        System.arraycopy(yMin, 0, this.yMin, 0, MAX_DATA_LINES);
-        System.arraycopy(yMax, 0, this.yMax, 0, MAX_DATA_LINES);
-        System.arraycopy(yRange, 0, this.yRange, 0, MAX_DATA_LINES);
+    public void updateYMinMaxRange() {
         changed |= CHANGED_YLABELS;
         chartInvalidate();
     }
@@ -390,108 +602,88 @@ public class ChartView extends View {
     }
 
     private void drawHorzDivText(Canvas canvas) {
-        float pos;
-        String text;
+        float pos, textWidth;
+        int len;
+        float posY = dvHeight + divTextHeight + marginOffs;
 
         /* Leftmost label */
-        text = getHorzDivString(xOffs);
-        divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-        canvas.drawText(text,
-                dvXOffsL > 0 ? dvXOffsL - rect.width() / 2 : marginOffs,
-                dvHeight + rect.height() + marginOffs,
+        len = formatHorzDiv(xOffs);
+        textWidth = LabelFormatter.measure(textBuf, 0, len, divTextAdvances);
+        canvas.drawText(textBuf, 0, len,
+                dvXOffsL > 0 ? dvXOffsL - textWidth / 2 : marginOffs,
+                posY,
                 divTextPaintL);
 
         for (int i = 1; i < NUM_HORZ_DIVISIONS; i++) {
-            text = getHorzDivString(xOffs + (i * xRange) / NUM_HORZ_DIVISIONS);
+            len = formatHorzDiv(xOffs + (i * xRange) / NUM_HORZ_DIVISIONS);
             pos = (i * dvWidth) / NUM_HORZ_DIVISIONS;
-            divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-            canvas.drawText(text,
-                    dvXOffsL + pos - rect.width() / 2,
-                    dvHeight + rect.height() + marginOffs,
+            textWidth = LabelFormatter.measure(textBuf, 0, len, divTextAdvances);
+            canvas.drawText(textBuf, 0, len,
+                    dvXOffsL + pos - textWidth / 2,
+                    posY,
                     divTextPaintL);
         }
 
         /* Rightmost label */
-        text = getHorzDivString(xOffs + xRange);
-        divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-        canvas.drawText(text,
-                dvXOffsR > 0 ? width - dvXOffsR - rect.width() / 2 : width - rect.width() - marginOffs,
-                dvHeight + rect.height() + marginOffs,
+        len = formatHorzDiv(xOffs + xRange);
+        textWidth = LabelFormatter.measure(textBuf, 0, len, divTextAdvances);
+        canvas.drawText(textBuf, 0, len,
+                dvXOffsR > 0 ? width - dvXOffsR - textWidth / 2 : width - textWidth - marginOffs,
+                posY,
                 divTextPaintL);
     }
 
-    private String getHorzDivString(float value) {
-        return xValFormat.format(value * xDispScale);
+    private int formatHorzDiv(float value) {
+        return xValFormat.format(value * xDispScale, textBuf, 0);
     }
 
     private void drawVertDivTextL(Canvas canvas) {
-        float pos;
-        String text;
-
-        /* Bottommost label */
-        text = yValFormat.format(yMin[leftLineNum]);
-        canvas.drawText(text,
-                marginOffs,
-                height - dvYOffs - marginOffs,
-                divTextPaintL);
-
-        for (int i = 1; i < NUM_VERT_DIVISIONS; i++) {
-            text = yValFormat.format(yMin[leftLineNum] + (i * yRange[leftLineNum]) / NUM_VERT_DIVISIONS);
-            pos = (i * dvHeight) / NUM_VERT_DIVISIONS;
-            divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-            canvas.drawText(text,
-                    marginOffs,
-                    height - dvYOffs - pos + rect.height() / 2,
-                    divTextPaintL);
-        }
-
-        /* Topmost label */
-        text = yValFormat.format(yMax[leftLineNum]);
-        divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-        canvas.drawText(text,
-                marginOffs,
-                rect.height() + marginOffs,
-                divTextPaintL);
+        drawVertDivText(canvas, leftLineNum, marginOffs, divTextPaintL);
     }
 
     private void drawVertDivTextR(Canvas canvas) {
+        drawVertDivText(canvas, rightLineNum, width - marginOffs, divTextPaintR);
+    }
+
+    private void drawVertDivText(Canvas canvas, int lineNum, float posX, Paint paint) {
         float pos;
-        String text;
+        int len;
+        Series s = series.get(lineNum);
+        if (s == null) return;
 
         /* Bottommost label */
-        text = yValFormat.format(yMin[rightLineNum]);
-        canvas.drawText(text,
-                width - marginOffs,
+        len = yValFormat.format(s.yMin, textBuf, 0);
+        canvas.drawText(textBuf, 0, len,
+                posX,
                 height - dvYOffs - marginOffs,
-                divTextPaintR);
+                paint);
 
         for (int i = 1; i < NUM_VERT_DIVISIONS; i++) {
-            text = yValFormat.format(yMin[rightLineNum] + (i * yRange[rightLineNum]) / NUM_VERT_DIVISIONS);
+            len = yValFormat.format(s.yMin + (i * s.yRange) / NUM_VERT_DIVISIONS, textBuf, 0);
             pos = (i * dvHeight) / NUM_VERT_DIVISIONS;
-            divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-            canvas.drawText(text,
-                    width - marginOffs,
-                    height - dvYOffs - pos + rect.height() / 2,
-                    divTextPaintR);
+            canvas.drawText(textBuf, 0, len,
+                    posX,
+                    height - dvYOffs - pos + divTextHeight / 2,
+                    paint);
         }
 
         /* Topmost label */
-        text = yValFormat.format(yMax[rightLineNum]);
-        divTextPaintL.getTextBounds(text, 0, text.length(), rect);
-        canvas.drawText(text,
-                width - marginOffs,
-                rect.height() + marginOffs,
-                divTextPaintR);
+        len = yValFormat.format(s.yMax, textBuf, 0);
+        canvas.drawText(textBuf, 0, len,
+                posX,
+                divTextHeight + marginOffs,
+                paint);
     }
 
     private void drawGraphLegend(Canvas canvas) {
         float posX = dvXOffsL;
-        String text;
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
 
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            if (((1 << i) & lineEnable) == 0) continue;
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < all.length; i = enabled.nextSetBit(i + 1)) {
+            Series s = all[i];
 
-            markerPaint.setColor(lineColors[i]);
+            markerPaint.setColor(s.color);
             canvas.drawCircle(
                     posX + marginOffs + markerRadius,
                     dvHeight - marginOffs - markerRadius,
@@ -500,66 +692,105 @@ public class ChartView extends View {
 
             posX += marginLegendL;
 
-            text = lineLabels[i];
-            canvas.drawText(text,
+            canvas.drawText(s.label,
                     posX,
                     dvHeight - marginOffs,
                     divTextPaintL);
 
-            posX += lineLabelsWidth[i] + marginLegendR;
+            posX += s.labelWidth + marginLegendR;
         }
     }
 
     private void drawLastYValHorz(Canvas canvas) {
-        String text;
-
         float posX = dvXOffsL + marginLegendR;
-        int rightMost = (xRightMost > xSize) ? xSize : xRightMost;
+        long rightMost = (xRightMost > xSize) ? xSize : xRightMost;
 
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            if (((1 << i) & lineEnable) == 0) continue;
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
 
-            yValTextPaint.setColor(lineColors[i]);
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < all.length; i = enabled.nextSetBit(i + 1)) {
+            Series s = all[i];
+            yValTextPaint.setColor(s.color);
 
-            if (rightMost < 1)
-                text = "[ - ]";
+            long idx = lastShown(s, rightMost);
+            if (idx < 0)
+                canvas.drawText(NO_YVAL_TEXT, 0, NO_YVAL_TEXT.length, posX, yValVertMargin, yValTextPaint);
             else
-                text = "[ " + yValFormat.format(yVals[i][rightMost - 1]) + " ]";
-
-            canvas.drawText(text,
-                    posX,
-                    yValVertMargin,
-                    yValTextPaint);
+                canvas.drawText(textBuf, 0, formatLastYVal(s, idx),
+                        posX,
+                        yValVertMargin,
+                        yValTextPaint);
             //noinspection SuspiciousNameCombination
             posX += yValSpacing;
         }
     }
 
     private void drawLastYValVert(Canvas canvas) {
-        String text;
-
         float posY = yValVertMargin;
-        int rightMost = (xRightMost > xSize) ? xSize : xRightMost;
+        long rightMost = (xRightMost > xSize) ? xSize : xRightMost;
 
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            if (((1 << i) & lineEnable) == 0) continue;
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
 
-            yValTextPaint.setColor(lineColors[i]);
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < all.length; i = enabled.nextSetBit(i + 1)) {
+            Series s = all[i];
+            yValTextPaint.setColor(s.color);
 
-            if (rightMost < 1)
-                text = "[ - ]";
+            long idx = lastShown(s, rightMost);
+            if (idx < 0)
+                canvas.drawText(NO_YVAL_TEXT, 0, NO_YVAL_TEXT.length, dvXOffsL + marginLegendR, posY, yValTextPaint);
             else
-                text = "[ " + yValFormat.format(yVals[i][rightMost - 1]) + " ]";
-
-            canvas.drawText(text,
-                    dvXOffsL + marginLegendR,
-                    posY,
-                    yValTextPaint);
+                canvas.drawText(textBuf, 0, formatLastYVal(s, idx),
+                        dvXOffsL + marginLegendR,
+                        posY,
+                        yValTextPaint);
             //noinspection SuspiciousNameCombination
             posY += dvYOffs;
         }
     }
 
+    /* Refreshed at most every OVERLAY_REFRESH_MS so the overlay costs little itself */
+    private void drawDebugOverlay(Canvas canvas) {
+        long now = SystemClock.uptimeMillis();
+        if (overlayLines == null || now - overlayTime >= OVERLAY_REFRESH_MS) {
+            overlayLines = statsLines();
+            overlayTime = now;
+        }
+
+        float lineHeight = overlayPaintFG.getTextSize() * 1.2F;
+        float textWidth = 0;
+        for (String line : overlayLines) textWidth = Math.max(textWidth, overlayPaintFG.measureText(line));
+        float left = dvXOffsL + marginOffs;
+        float top = yValVertMargin + marginOffs;
+        canvas.drawRect(left, top, left + textWidth + 2 * marginOffs,
+                top + overlayLines.length * lineHeight + marginOffs, overlayPaintBG);
+        for (int i = 0; i < overlayLines.length; i++) {
+            canvas.drawText(overlayLines[i], left + marginOffs, top + (i + 1) * lineHeight, overlayPaintFG);
+        }
+    }
+
+    /* Index of the newest sample of s left of x position rightMost, or -1 */
+    private long lastShown(Series s, long rightMost) {
+        SampleSource store = s.store();
+        if (store == null) return -1;
+        if (!dataView.isTimeBased()) return rightMost - 1;
+
+        long idx = store.search(rightMost, s.readHint);
+        s.readHint = idx;
+        return (idx > store.getFirst()) ? idx - 1 : -1;
+    }
+
+    /* "[ value ]" into textBuf, returns its length */
+    private int formatLastYVal(Series s, long idx) {
+        textBuf[0] = '[';
+        textBuf[1] = ' ';
+        Series.Source src = s.source;
+        int len = yValFormat.format(src.store.get(src.column, idx), textBuf, 2);
+        textBuf[len++] = ' ';
+        textBuf[len++] = ']';
+        return len;
+    }
+
     private void chartInvalidate() {
         //if (refreshThread != null) refreshThread.refresh();
         postInvalidate();
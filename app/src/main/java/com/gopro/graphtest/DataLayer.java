@@ -0,0 +1,167 @@
+package com.gopro.graphtest;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import java.util.BitSet;
+
+/**
+ * The data lines rasterized off the UI thread. The render thread draws each
+ * {@link PointFrame} into one of three recycled bitmaps and onDraw only
+ * blits the newest one, so the UI thread's cost does not depend on how many
+ * points are shown.
+ * <p>
+ * Every frame is drawn in full. Redrawing only the ring slots that scrolled
+ * in would need slots a whole number of pixels wide, which the index-based
+ * layout rarely has and time-based windows never do.
+ * <p>
+ * {@link #draw} runs on the render thread and {@link #blit} on the UI
+ * thread. A bitmap is only drawn into again after the UI thread has moved
+ * on to a newer one.
+ */
+final class DataLayer {
+
+    /**
+     * One bitmap and what it holds.
+     */
+    static final class Slot {
+        final Canvas canvas = new Canvas();
+        Bitmap bitmap;
+        boolean valid;
+
+        /* Handed to the UI thread with the bitmap */
+        int numLines;
+        float[] dataMin = new float[0];
+        float[] dataMax = new float[0];
+        long dataNanos;
+    }
+
+    private final Slot[] pool = {new Slot(), new Slot(), new Slot()};
+    private final TripleBuffer<Slot> slots = new TripleBuffer<Slot>(pool[0], pool[1], pool[2]);
+    private final float strokeWidth;
+    private final BitSet lines = new BitSet();
+
+    /* Render thread only */
+    private Paint[] paints = new Paint[0];
+    private final Path path = new Path();
+
+    DataLayer(float strokeWidth) {
+        this.strokeWidth = strokeWidth;
+    }
+
+    /**
+     * Rasterizes f, the frame just published, into the back bitmap and
+     * publishes it.
+     */
+    void draw(PointFrame f, Series[] all, BitSet enabled, int width, int height) {
+        Slot st = slots.getBack();
+        if (!ensureBitmap(st, width, height)) return;
+
+        int numLines = (f.getNumLines() < all.length) ? f.getNumLines() : all.length;
+        lines.clear();
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < numLines; i = enabled.nextSetBit(i + 1)) {
+            if (f.lineSegs[i] <= 0) continue;
+            lines.set(i);
+            paintFor(i).setColor(all[i].color);
+        }
+
+        st.bitmap.eraseColor(0);
+        Canvas canvas = st.canvas;
+        int saveCount = canvas.save();
+        canvas.scale(1, -1);
+        canvas.translate(0, -height);
+        drawScreen(canvas, f);
+        canvas.restoreToCount(saveCount);
+
+        st.valid = true;
+        if (st.dataMin.length < numLines) {
+            st.dataMin = new float[numLines];
+            st.dataMax = new float[numLines];
+        }
+        System.arraycopy(f.dataMin, 0, st.dataMin, 0, numLines);
+        System.arraycopy(f.dataMax, 0, st.dataMax, 0, numLines);
+        st.numLines = numLines;
+        st.dataNanos = f.dataNanos;
+        f.dataNanos = 0;
+        slots.publish();
+    }
+
+    /**
+     * Draws the newest bitmap in view coordinates and returns its slot, or
+     * null if there is none yet. UI thread only.
+     */
+    Slot blit(Canvas canvas) {
+        Slot st = slots.getFront();
+        if (!st.valid) return null;
+        canvas.drawBitmap(st.bitmap, 0, 0, null);
+        return st;
+    }
+
+    /**
+     * Frees the bitmaps. Render thread only, once nothing is drawn any more.
+     */
+    void release() {
+        for (Slot st : pool) {
+            if (st.bitmap != null) {
+                st.canvas.setBitmap(null);
+                st.bitmap.recycle();
+                st.bitmap = null;
+            }
+            st.valid = false;
+        }
+    }
+
+    /* Reallocates the slot's bitmap if the size changed; false if there is nothing to draw into */
+    private static boolean ensureBitmap(Slot st, int width, int height) {
+        if (width <= 0 || height <= 0) return false;
+        if (st.bitmap != null && st.bitmap.getWidth() == width && st.bitmap.getHeight() == height) return true;
+
+        if (st.bitmap != null) {
+            st.canvas.setBitmap(null);
+            st.bitmap.recycle();
+        }
+        st.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        st.canvas.setBitmap(st.bitmap);
+        st.valid = false;
+        return true;
+    }
+
+    /* Every line as DataView.onDraw would draw it */
+    private void drawScreen(Canvas canvas, PointFrame f) {
+        for (int i = lines.nextSetBit(0); i >= 0; i = lines.nextSetBit(i + 1)) {
+            int segs = f.lineSegs[i];
+            int head = f.heads[i];
+            int saveCount = canvas.save();
+            if (f.strip) {
+                canvas.drawPath(DataView.fillStrip(path, f.points[i], segs + 1), paints[i]);
+            } else {
+                canvas.translate(-head * f.dx, 0);
+                canvas.drawLines(f.points[i], head << 2, (segs - head) << 2, paints[i]);
+                if (head > 0) {
+                    canvas.translate(segs * f.dx, 0);
+                    canvas.drawLines(f.points[i], 0, head << 2, paints[i]);
+                }
+            }
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private Paint paintFor(int lineNum) {
+        if (lineNum >= paints.length) {
+            Paint[] grown = new Paint[lineNum + 1];
+            System.arraycopy(paints, 0, grown, 0, paints.length);
+            for (int i = paints.length; i < grown.length; i++) {
+                grown[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+                grown[i].setStyle(Paint.Style.STROKE);
+                grown[i].setStrokeJoin(Paint.Join.ROUND);
+                grown[i].setStrokeCap(Paint.Cap.ROUND);
+                grown[i].setStrokeWidth(strokeWidth);
+            }
+            paints = grown;
+        }
+        return paints[lineNum];
+    }
+
+}
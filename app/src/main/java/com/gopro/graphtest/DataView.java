@@ -3,48 +3,66 @@ package com.gopro.graphtest;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.OverScroller;
 
+import java.util.BitSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class DataView extends View implements ScaleGestureDetector.OnScaleGestureListener {
+public class DataView extends View implements ScaleGestureDetector.OnScaleGestureListener,
+        RenderScheduler.Callback {
 
     private static final String TAG = "~DataView";
 
-    private static final int MAX_HORZ_POINTS = 400;
     private static final int MIN_XRANGE = 200;
     private static final float MIN_YRANGE = 0.1F;
-    private static final int MAX_DATA_LINES = ChartView.MAX_DATA_LINES;
     private static final float DATA_LINE_WIDTH = 4F;
-
-    private static final int CHANGED_XOFF = (1 << 0);
-    private static final int CHANGED_XRANGE = (1 << 1);
-    private static final int CHANGED_YRANGE = (1 << 2);
-
-    private final Paint[] dataPaint = new Paint[MAX_DATA_LINES];
-    private final float[][] yVals = new float[MAX_DATA_LINES][];
-    private final float[][] points = new float[MAX_DATA_LINES][MAX_HORZ_POINTS * 4 + 8];
-    private final float[] yRange = new float[MAX_DATA_LINES];
-    private final float[] yMin = new float[MAX_DATA_LINES];
-    private final float[] yMax = new float[MAX_DATA_LINES];
-    private final float[] yAbsMin = new float[MAX_DATA_LINES];
-    private final float[] yAbsMax = new float[MAX_DATA_LINES];
-    private final float[] xPts = new float[MAX_HORZ_POINTS + 1];
+    private static final long DEFAULT_REFINE_DELAY_MS = 150;
+    /* Samples panned per pixel dragged, in windows per view width */
+    private static final float PAN_GAIN = 1.5F;
+    /* Zoom flings, in ln(xRange) per second, lose 1/e of their rate every ZOOM_DECAY_S */
+    private static final float ZOOM_DECAY_S = 0.3F;
+    private static final float MIN_ZOOM_RATE = 0.2F;
+    private static final float MAX_ZOOM_RATE = 4F;
+    /* How far ahead of a fling its windows are paged in */
+    private static final long PREFETCH_AHEAD_MS = 250;
+
+    private static final int CHANGED_XOFF = ChartEngine.CHANGED_XOFF;
+    private static final int CHANGED_XRANGE = ChartEngine.CHANGED_XRANGE;
+    private static final int CHANGED_YRANGE = ChartEngine.CHANGED_YRANGE;
+
+    private Paint[] dataPaint = new Paint[0];
+    private Path[] dataPath = new Path[0];
+    private ChartEngine engine;
+    private SeriesRegistry series;
 
     private int width, height;
-    private float xSampFact;
-    private int xSize, xRange, xOffs, xMaxSize;
-    private int prevXOffs;
-    private int numLinesDraw;
-    private int lineEnable;
+    private int xRange;
+    private long xSize, xOffs;
     private int changed;
     private boolean pinching;
+    /* A gesture moved the window less than refineDelayMs ago; passes are coarse until then */
+    private boolean interacting;
+    private long refineDelayMs = DEFAULT_REFINE_DELAY_MS;
+    private volatile boolean followLive;
+    private volatile boolean renderToBitmap;
+    private DataLayer layer;
     private ExecutorService lineRenderSvc;
+    private ExecutorService lineWorkerSvc;
+    private RenderScheduler renderScheduler;
     private ScaleGestureDetector scaleDetector;
+    private VelocityTracker velocityTracker;
+    private OverScroller scroller;
+    private int minFlingVelocity, maxFlingVelocity;
+    private final AtomicBoolean prefetching = new AtomicBoolean();
     private ChartView chartView;
 
     public DataView(Context context) {
@@ -58,21 +76,32 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
     }
 
     private void init(Context context) {
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            dataPaint[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
-            dataPaint[i].setStyle(Paint.Style.STROKE);
-            dataPaint[i].setStrokeJoin(Paint.Join.ROUND);
-            dataPaint[i].setStrokeCap(Paint.Cap.ROUND);
-            dataPaint[i].setStrokeWidth(DATA_LINE_WIDTH);
-        }
-
+        /* The render thread takes a share of the lines itself, the pool the rest */
+        int cpus = Runtime.getRuntime().availableProcessors();
         lineRenderSvc = Executors.newSingleThreadExecutor();
+        lineWorkerSvc = Executors.newFixedThreadPool((cpus > 1) ? cpus - 1 : 1);
+        engine = new ChartEngine(lineWorkerSvc, cpus);
+        series = engine.getSeries();
+
+        renderScheduler = new RenderScheduler(this);
         scaleDetector = new ScaleGestureDetector(context, this);
+        scroller = new OverScroller(context);
+        ViewConfiguration config = ViewConfiguration.get(context);
+        minFlingVelocity = config.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = config.getScaledMaximumFlingVelocity();
     }
 
+    private final Runnable refine = new Runnable() {
+        @Override
+        public void run() {
+            interacting = false;
+            update();
+        }
+    };
+
     private float touchDnX, touchDnY;
-    private final float[] touchDnYMin = new float[MAX_DATA_LINES];
-    private int touchDnXOffs;
+    private float[] touchDnYMin = new float[0];
+    private long touchDnXOffs;
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
@@ -82,6 +111,13 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
         retVal = scaleDetector.onTouchEvent(event);
 
         int action = event.getActionMasked();
+        if (velocityTracker == null) velocityTracker = VelocityTracker.obtain();
+        if (action == MotionEvent.ACTION_DOWN) {
+            stopFling();
+            velocityTracker.clear();
+        }
+        velocityTracker.addMovement(event);
+
         switch (action) {
             case MotionEvent.ACTION_DOWN:
                 if (!pinching) {
@@ -89,7 +125,9 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
                     touchDnX = event.getX();
                     touchDnXOffs = xOffs;
                     touchDnY = event.getY();
-                    System.arraycopy(yMin, 0, touchDnYMin, 0, MAX_DATA_LINES);
+                    Series[] all = series.getAll();
+                    if (touchDnYMin.length < all.length) touchDnYMin = new float[all.length];
+                    for (int i = 0; i < all.length; i++) touchDnYMin[i] = all[i].yMin;
                     retVal = true;
                 }
                 break;
@@ -99,33 +137,38 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
                     //Log.i(TAG, "ACTION_MOVE");
 
                     distX = event.getX() - touchDnX;
-                    xOffs = touchDnXOffs - (int) ((1.5F * distX * xRange) / width);
-                    xOffs = (xOffs < 0) ? 0 : xOffs;
+                    xOffs = engine.clampXOffs(touchDnXOffs - (int) ((PAN_GAIN * distX * xRange) / width));
                     changed |= CHANGED_XOFF;
                     chartView.updateXOffs(xOffs);
                     //Log.i(TAG, String.format("xOffs=%d xRange=%d", xOffs, xRange));
 
                     distY = event.getY() - touchDnY;
-                    for (int i = 0; i < MAX_DATA_LINES; i++) {
-                        yMin[i] = touchDnYMin[i] + ((distY * yRange[i]) / height);
-                        yMax[i] = yMin[i] + yRange[i];
-                        if (yMin[i] < yAbsMin[i]) {
-                            yMin[i] = yAbsMin[i];
-                            yMax[i] = yMin[i] + yRange[i];
-                        } else if (yMax[i] > yAbsMax[i]) {
-                            yMax[i] = yAbsMax[i];
-                            yMin[i] = yMax[i] - yRange[i];
-                        }
+                    Series[] all = series.getAll();
+                    int num = (all.length < touchDnYMin.length) ? all.length : touchDnYMin.length;
+                    for (int i = 0; i < num; i++) {
+                        Series s = all[i];
+                        if (s.autoRange != null) continue;
+                        float yMin = touchDnYMin[i] + ((distY * s.yRange) / height);
+                        if (yMin < s.yAbsMin)
+                            yMin = s.yAbsMin;
+                        else if (yMin + s.yRange > s.yAbsMax)
+                            yMin = s.yAbsMax - s.yRange;
+                        s.setYMinMax(yMin, yMin + s.yRange);
                     }
                     changed |= CHANGED_YRANGE;
 
-                    update();
+                    moved();
                     retVal = true;
                 }
                 break;
 
             case MotionEvent.ACTION_UP:
                 //Log.i(TAG, "ACTION_UP");
+                if (!pinching) {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    float vx = velocityTracker.getXVelocity();
+                    if (Math.abs(vx) > minFlingVelocity) flingPan(vx);
+                }
                 pinching = false;
                 retVal = true;
                 break;
@@ -139,10 +182,11 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
         return retVal || super.onTouchEvent(event);
     }
 
-    private int pinchBeginXRange, pinchBeginX;
+    private int pinchBeginXRange;
+    private long pinchBeginX;
     private float pinchBeginXRatio;
-    private final float[] pinchBeginYRange = new float[MAX_DATA_LINES];
-    private final float[] pinchBeginY = new float[MAX_DATA_LINES];
+    private float[] pinchBeginYRange = new float[0];
+    private float[] pinchBeginY = new float[0];
     private boolean pinchingX;
 
     @Override
@@ -161,30 +205,36 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
 
         if (pinchingX) {
             /* Pinch-X */
-            xRange = (int) (pinchBeginXRange * xScale);
-            xRange = (xRange < MIN_XRANGE) ? MIN_XRANGE : xRange;
-            xRange = (xRange > xSize + MIN_XRANGE) ? (xSize + MIN_XRANGE) : xRange;
-            xSampFact = (xRange < MAX_HORZ_POINTS) ? 1F : (xRange / (float) MAX_HORZ_POINTS);
-            xOffs = pinchBeginX - (int) (pinchBeginXRatio * xRange);
-            xOffs = (xOffs < 0) ? 0 : xOffs;
+            int prevXRange = xRange;
+            xRange = clampXRange(pinchBeginXRange * xScale);
+            xOffs = engine.clampXOffs(pinchBeginX - (int) (pinchBeginXRatio * xRange));
+            long dt = detector.getTimeDelta();
+            if (dt > 0) {
+                /* Smoothed, for the zoom to carry on at when the fingers lift */
+                float rate = (float) Math.log(xRange / (double) prevXRange) * 1000F / dt;
+                zoomRate = 0.5F * (zoomRate + rate);
+            }
             changed |= (CHANGED_XRANGE | CHANGED_XOFF);
             //Log.i(TAG, String.format("xOffs=%d xRange=%d xSampFact=%f", xOffs, xRange, xSampFact));
         } else {
             /* Pinch-Y */
-            for (int i = 0; i < MAX_DATA_LINES; i++) {
-                yRange[i] = (pinchBeginYRange[i] * yScale);
-                if ((yRange[i] / (yAbsMax[i] - yAbsMin[i])) < MIN_YRANGE)
-                    yRange[i] = MIN_YRANGE * (yAbsMax[i] - yAbsMin[i]);
-                if (yRange[i] > (yAbsMax[i] - yAbsMin[i]))
-                    yRange[i] = yAbsMax[i] - yAbsMin[i];
-
-                yMin[i] = pinchBeginY[i] - yRange[i] * 0.5F;
-                yMax[i] = pinchBeginY[i] + yRange[i] * 0.5F;
+            Series[] all = series.getAll();
+            int num = (all.length < pinchBeginY.length) ? all.length : pinchBeginY.length;
+            for (int i = 0; i < num; i++) {
+                Series s = all[i];
+                if (s.autoRange != null) continue;
+                float yRange = (pinchBeginYRange[i] * yScale);
+                if ((yRange / (s.yAbsMax - s.yAbsMin)) < MIN_YRANGE)
+                    yRange = MIN_YRANGE * (s.yAbsMax - s.yAbsMin);
+                if (yRange > (s.yAbsMax - s.yAbsMin))
+                    yRange = s.yAbsMax - s.yAbsMin;
+
+                s.setYMinMax(pinchBeginY[i] - yRange * 0.5F, pinchBeginY[i] + yRange * 0.5F);
                 changed |= CHANGED_YRANGE;
             }
         }
 
-        update();
+        moved();
         return false;
     }
 
@@ -195,13 +245,19 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
         pinchBeginXRatio = detector.getFocusX() / width;
         pinchBeginX = xOffs + (int) (pinchBeginXRatio * xRange);
 
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            pinchBeginYRange[i] = yRange[i];
-            pinchBeginY[i] = (yAbsMax[i] + yAbsMin[i]) * 0.5F;
+        Series[] all = series.getAll();
+        if (pinchBeginY.length < all.length) {
+            pinchBeginYRange = new float[all.length];
+            pinchBeginY = new float[all.length];
+        }
+        for (int i = 0; i < all.length; i++) {
+            pinchBeginYRange[i] = all[i].yRange;
+            pinchBeginY[i] = (all[i].yAbsMax + all[i].yAbsMin) * 0.5F;
         }
 
         pinchingX = (detector.getCurrentSpanX() > detector.getCurrentSpanY());
         pinching = true;
+        zoomRate = 0;
         return true;
     }
 
@@ -209,6 +265,117 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
     public void onScaleEnd(ScaleGestureDetector detector) {
         //Log.i(TAG, "onScaleEnd: ");
         //pinching = false;
+        if (pinchingX && Math.abs(zoomRate) > MIN_ZOOM_RATE) flingZoom();
+        else zoomRate = 0;
+    }
+
+    private int clampXRange(float range) {
+        long maxXRange = xSize - engine.clampXOffs(0) + MIN_XRANGE;
+        if (range > maxXRange) range = maxXRange;
+        return (range < MIN_XRANGE) ? MIN_XRANGE : (int) range;
+    }
+
+    /* Pan fling: the scroller runs in pixels from 0, flingXOffs - currX * flingScale is the window */
+    private long flingXOffs;
+    private float flingScale;
+    /* Zoom fling: xRange unrounded, around the focus of the pinch */
+    private float zoomRate, zoomXRange;
+    private long zoomLastNanos;
+    private boolean flinging;
+
+    /* Lets the window coast on after the finger lifts, slowing down as a list does */
+    private void flingPan(float vx) {
+        flingXOffs = xOffs;
+        flingScale = (PAN_GAIN * xRange) / width;
+        long lo = engine.clampXOffs(0);
+        long hi = (xSize - xRange > lo) ? xSize - xRange : lo;
+        scroller.fling(0, 0, (int) vx, 0, flingPx(flingXOffs - hi), flingPx(flingXOffs - lo), 0, 0);
+        startFling();
+    }
+
+    /* Carries the pinch's last zoom rate on, decaying, around the same focus */
+    private void flingZoom() {
+        if (zoomRate > MAX_ZOOM_RATE) zoomRate = MAX_ZOOM_RATE;
+        if (zoomRate < -MAX_ZOOM_RATE) zoomRate = -MAX_ZOOM_RATE;
+        zoomXRange = xRange;
+        zoomLastNanos = System.nanoTime();
+        startFling();
+    }
+
+    private int flingPx(long samples) {
+        double px = samples / (double) flingScale;
+        if (px > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        return (px < -Integer.MAX_VALUE) ? -Integer.MAX_VALUE : (int) px;
+    }
+
+    private void startFling() {
+        flinging = true;
+        removeCallbacks(flingStep);
+        postOnAnimation(flingStep);
+    }
+
+    private void stopFling() {
+        flinging = false;
+        scroller.forceFinished(true);
+        zoomRate = 0;
+        removeCallbacks(flingStep);
+    }
+
+    /* One display frame of a fling, pan and zoom; pages in what the next PREFETCH_AHEAD_MS will show */
+    private final Runnable flingStep = new Runnable() {
+        @Override
+        public void run() {
+            if (!flinging) return;
+            boolean more = false;
+
+            if (scroller.computeScrollOffset()) {
+                int x = scroller.getCurrX();
+                xOffs = engine.clampXOffs(flingXOffs - (long) (x * flingScale));
+                changed |= CHANGED_XOFF;
+                more = !scroller.isFinished();
+
+                int leftPx = scroller.getFinalX() - x;
+                float aheadPx = scroller.getCurrVelocity() * PREFETCH_AHEAD_MS / 1000F;
+                long ahead = (long) (Math.min(aheadPx, Math.abs(leftPx)) * flingScale);
+                if (leftPx > 0)
+                    prefetch(xOffs - ahead, xOffs);
+                else
+                    prefetch(xOffs + xRange, xOffs + xRange + ahead);
+            }
+
+            if (zoomRate != 0) {
+                long now = System.nanoTime();
+                float dt = (now - zoomLastNanos) / 1e9F;
+                zoomLastNanos = now;
+                zoomXRange *= (float) Math.exp(zoomRate * dt);
+                zoomRate *= (float) Math.exp(-dt / ZOOM_DECAY_S);
+                xRange = clampXRange(zoomXRange);
+                if (xRange != (int) zoomXRange || Math.abs(zoomRate) < MIN_ZOOM_RATE) zoomRate = 0;
+                xOffs = engine.clampXOffs(pinchBeginX - (long) (pinchBeginXRatio * xRange));
+                changed |= (CHANGED_XRANGE | CHANGED_XOFF);
+                more |= (zoomRate != 0);
+
+                /* Zooming out widens the window; zooming in stays inside it */
+                float ahead = (float) Math.exp(zoomRate * PREFETCH_AHEAD_MS / 1000F) * xRange;
+                if (ahead > xRange) {
+                    long from = pinchBeginX - (long) (pinchBeginXRatio * ahead);
+                    prefetch(from, from + (long) ahead);
+                }
+            }
+
+            chartView.updateXOffs(xOffs);
+            if (more)
+                postOnAnimation(this);
+            else
+                flinging = false;
+            moved();
+        }
+    };
+
+    /* Pages in x [from, to) on the render thread, unless a prefetch is still queued there */
+    private void prefetch(long from, long to) {
+        if (to <= from || !prefetching.compareAndSet(false, true)) return;
+        lineRenderSvc.execute(new Prefetcher(from, to));
     }
 
     @Override
@@ -221,14 +388,76 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
 
     @Override
     protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
         super.onDraw(canvas);
+        ChartStats stats = engine.getStats();
+
+        /* The render thread owns the frames in bitmap mode */
+        if (layer != null) {
+            DataLayer.Slot slot = layer.blit(canvas);
+            stats.record(ChartStats.STAGE_DRAW, start);
+            if (slot != null) {
+                stats.drawn(slot.dataNanos);
+                slot.dataNanos = 0;
+                stepAutoRange(slot.numLines, slot.dataMin, slot.dataMax);
+            }
+            return;
+        }
+
         canvas.scale(1, -1);
         canvas.translate(0, -height);
 
-        if (numLinesDraw <= 0) return;
-        for (int i = 0; i < MAX_DATA_LINES; i++) {
-            if (((1 << i) & lineEnable) == 0) return;
-            canvas.drawLines(points[i], 0, numLinesDraw << 2, dataPaint[i]);
+        PointFrame frame = engine.getFront();
+        BitSet enabled = series.getEnabled();
+        int numLines = frame.getNumLines();
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < numLines; i = enabled.nextSetBit(i + 1)) {
+            int segs = frame.lineSegs[i];
+            int head = frame.heads[i];
+            if (segs <= 0) continue;
+            if (frame.strip) {
+                canvas.drawPath(stripPath(i, frame.points[i], segs + 1), paintFor(i));
+                continue;
+            }
+
+            /* Oldest part of the ring first, then the wrapped-around newest part */
+            int saveCount = canvas.save();
+            canvas.translate(-head * frame.dx, 0);
+            Paint paint = paintFor(i);
+            canvas.drawLines(frame.points[i], head << 2, (segs - head) << 2, paint);
+            if (head > 0) {
+                canvas.translate(segs * frame.dx, 0);
+                canvas.drawLines(frame.points[i], 0, head << 2, paint);
+            }
+            canvas.restoreToCount(saveCount);
+        }
+
+        stats.record(ChartStats.STAGE_DRAW, start);
+        stats.drawn(frame.dataNanos);
+        frame.dataNanos = 0;
+
+        if (frame.gen >= 0) stepAutoRange(numLines, frame.dataMin, frame.dataMax);
+    }
+
+    /*
+     * Moves the bounds of auto-ranged lines towards the data range of the
+     * frame just drawn. Each move needs a new pass, which draws the next
+     * step, until the animation is over.
+     */
+    private void stepAutoRange(int numLines, float[] dataMin, float[] dataMax) {
+        Series[] all = series.getAll();
+        BitSet enabled = series.getEnabled();
+        long now = System.nanoTime();
+        boolean moved = false;
+        for (int i = enabled.nextSetBit(0); i >= 0 && i < numLines && i < all.length; i = enabled.nextSetBit(i + 1)) {
+            AutoRange auto = all[i].autoRange;
+            if (auto == null) continue;
+            Series s = all[i];
+            float minSpan = MIN_YRANGE * (s.yAbsMax - s.yAbsMin);
+            moved |= auto.step(s, dataMin[i], dataMax[i], minSpan, now);
+        }
+        if (moved) {
+            changed |= CHANGED_YRANGE;
+            update();
         }
     }
 
@@ -236,61 +465,217 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         //Log.i(TAG, "onDetachedFromWindow: DataView");
+        renderScheduler.cancel();
+        removeCallbacks(refine);
+        stopFling();
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+        if (layer != null) releaseLayer();
         lineRenderSvc.shutdown();
+        lineWorkerSvc.shutdown();
     }
 
     public void setChartView(ChartView chartView) {
         this.chartView = chartView;
     }
 
-    public void enableLine(int lineEnable) {
-        this.lineEnable = lineEnable;
+    SeriesRegistry getSeries() {
+        return series;
+    }
+
+    ChartStats getStats() {
+        return engine.getStats();
+    }
+
+    public void enableLine(int lineNum, boolean enable) {
+        series.setEnabled(lineNum, enable);
     }
 
     public void setLineColor(int lineNum, int color) {
-        dataPaint[lineNum].setColor(color);
+        paintFor(lineNum).setColor(color);
     }
 
     public void setYMinMax(int lineNum, float yMin, float yMax) {
-        this.yMin[lineNum] = yMin;
-        this.yMax[lineNum] = yMax;
-        yRange[lineNum] = this.yMax[lineNum] - this.yMin[lineNum];
+        Series s = series.obtain(lineNum);
+        if (s.autoRange != null) return;
+        s.setYMinMax(yMin, yMax);
         changed |= CHANGED_YRANGE;
     }
 
+    /**
+     * Lets the y bounds of a line follow its visible data instead of
+     * setYMinMax and vertical gestures, which then leave it alone.
+     */
+    public void setAutoRange(int lineNum, boolean enable) {
+        Series s = series.obtain(lineNum);
+        if (enable == (s.autoRange != null)) return;
+        s.autoRange = enable ? new AutoRange() : null;
+        update();
+    }
+
     public void setYAbsMinMax(int lineNum, float yAbsMin, float yAbsMax) {
-        this.yAbsMin[lineNum] = yAbsMin;
-        this.yAbsMax[lineNum] = yAbsMax;
+        Series s = series.obtain(lineNum);
+        s.yAbsMin = yAbsMin;
+        s.yAbsMax = yAbsMax;
     }
 
     public void setXRange(int xRange) {
         xRange = (xRange < MIN_XRANGE) ? MIN_XRANGE : xRange;
         this.xRange = xRange;
         changed |= CHANGED_XRANGE;
-        xSampFact = (xRange < MAX_HORZ_POINTS) ? 1F : (xRange / (float) MAX_HORZ_POINTS);
     }
 
-    public void setXOffs(int xOffs) {
-        this.xOffs = (xOffs < 0) ? 0 : xOffs;
+    public void setXOffs(long xOffs) {
+        this.xOffs = engine.clampXOffs(xOffs);
         changed |= CHANGED_XOFF;
     }
 
-    public void setXSize(int xSize) {
-        this.xSize = xSize;
+    public void setYVals(int lineNum, SampleSource store, int column) {
+        engine.setSource(lineNum, store, column);
+        xSize = engine.xEnd();
     }
 
-    public void setXMaxSize(int xMaxSize) {
-        this.xMaxSize = xMaxSize;
+    /**
+     * True if every series is timestamped, in which case x positions, offsets
+     * and ranges are in the units of the timestamps instead of sample indices.
+     */
+    public boolean isTimeBased() {
+        return engine.isTimeBased();
     }
 
-    public void setYVals(int lineNum, float[] yVals) {
-        this.yVals[lineNum] = yVals;
+    public long getXSize() {
+        return xSize;
     }
 
-    private class LineRenderer implements Runnable {
-        private final int xOffs, xRange, xSize, changed;
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
+    public void setDecimation(int mode) {
+        engine.setDecimation(mode);
+        changed |= CHANGED_XRANGE;
+    }
+
+    public void setTileCacheSize(long bytes) {
+        engine.setTileCacheBytes(bytes);
+    }
+
+    public void setLineMode(int mode) {
+        engine.setLineMode(mode);
+        update();
+    }
+
+    /**
+     * How long input must be idle before a gesture's coarse frames are
+     * replaced by a full-detail pass; 0 renders every pass in full detail.
+     */
+    public void setRefineDelay(long ms) {
+        refineDelayMs = ms;
+    }
+
+    /**
+     * Rasterizes the lines into a bitmap on the render thread, leaving
+     * onDraw only a blit. Takes effect with the next render pass.
+     */
+    public void setRenderToBitmap(boolean enable) {
+        renderToBitmap = enable;
+        changed |= CHANGED_XRANGE;
+        update();
+    }
+
+    /*
+     * A gesture moved the window: render coarse passes until input has been
+     * idle for refineDelayMs, and drop a full-detail pass still working on
+     * the old window.
+     */
+    private void moved() {
+        if (refineDelayMs > 0) {
+            interacting = true;
+            engine.cancelPass();
+            removeCallbacks(refine);
+            postDelayed(refine, refineDelayMs);
+        }
+        update();
+    }
+
+    /* Drops the layer; its bitmaps are freed behind any render still running */
+    private void releaseLayer() {
+        final DataLayer released = layer;
+        layer = null;
+        lineRenderSvc.execute(new Runnable() {
+            @Override
+            public void run() {
+                released.release();
+            }
+        });
+    }
+
+    /* Polyline through the first count x, y vertices of pts, in path */
+    static Path fillStrip(Path path, float[] pts, int count) {
+        path.rewind();
+        path.moveTo(pts[0], pts[1]);
+        for (int j = 2; j < count << 1; j += 2) path.lineTo(pts[j], pts[j + 1]);
+        return path;
+    }
+
+    /* The line's reused Path, rewound to the polyline through count vertices of pts */
+    private Path stripPath(int lineNum, float[] pts, int count) {
+        if (lineNum >= dataPath.length) {
+            Path[] grown = new Path[lineNum + 1];
+            System.arraycopy(dataPath, 0, grown, 0, dataPath.length);
+            for (int i = dataPath.length; i < grown.length; i++) grown[i] = new Path();
+            dataPath = grown;
+        }
+        return fillStrip(dataPath[lineNum], pts, count);
+    }
+
+    /* UI thread only */
+    private Paint paintFor(int lineNum) {
+        if (lineNum >= dataPaint.length) {
+            Paint[] grown = new Paint[lineNum + 1];
+            System.arraycopy(dataPaint, 0, grown, 0, dataPaint.length);
+            for (int i = dataPaint.length; i < grown.length; i++) {
+                grown[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+                grown[i].setStyle(Paint.Style.STROKE);
+                grown[i].setStrokeJoin(Paint.Join.ROUND);
+                grown[i].setStrokeCap(Paint.Cap.ROUND);
+                grown[i].setStrokeWidth(DATA_LINE_WIDTH);
+            }
+            dataPaint = grown;
+        }
+        return dataPaint[lineNum];
+    }
+
+    private class Prefetcher implements Runnable {
+        private final long from, to;
+
+        Prefetcher(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
 
-        public LineRenderer(int xOffs, int xRange, int xSize, int changed) {
+        @Override
+        public void run() {
+            try {
+                engine.prefetch(from, to);
+            } finally {
+                prefetching.set(false);
+            }
+        }
+    }
+
+    private class LineRenderer implements Runnable {
+        private final int xRange, changed;
+        private final long xOffs, xSize;
+        private final boolean coarse = interacting;
+        private final int width = DataView.this.width;
+        private final int height = DataView.this.height;
+        private final DataLayer layer = DataView.this.layer;
+        private final long enqueued = System.nanoTime();
+
+        public LineRenderer(long xOffs, int xRange, long xSize, int changed) {
             this.xOffs = xOffs;
             this.xRange = xRange;
             this.xSize = xSize;
@@ -299,93 +684,64 @@ public class DataView extends View implements ScaleGestureDetector.OnScaleGestur
 
         @Override
         public void run() {
-            int j, numPts;
-            float x, y;
-
-            numPts = (int) ((xSize - xOffs) / xSampFact) - 1;
-            numPts = (numPts > xRange) ? xRange : numPts;
-            numPts = (numPts >= MAX_HORZ_POINTS) ? MAX_HORZ_POINTS - 1 : numPts;
-
-            for (int lineNum = 0; lineNum < MAX_DATA_LINES; lineNum++) {
-                if (((1 << lineNum) & lineEnable) == 0) break;
-
-                if ((changed & CHANGED_XRANGE) != 0) calcXPts();
-
-                if (((changed & ~CHANGED_XOFF) == 0) && (xOffs == prevXOffs + 1)) {
-                    /* shift left all prev lines */
-                    int xRangeMT = ((xRange < MAX_HORZ_POINTS) ? xRange : MAX_HORZ_POINTS) - 2;
-                    j = 0;
-                    for (int i = 0; i < xRangeMT; i++) {
-                        j = i << 2;
-                        points[lineNum][j + 1] = points[lineNum][j + 5];
-                        points[lineNum][j + 3] = points[lineNum][j + 7];
+            engine.getStats().dequeued(enqueued);
+            try {
+                if (engine.render(xOffs, xRange, xSize, width, height, changed, coarse)) {
+                    if (layer != null) {
+                        long start = System.nanoTime();
+                        layer.draw(engine.getFront(), series.getAll(), series.getEnabled(), width, height);
+                        engine.getStats().record(ChartStats.STAGE_RASTER, start);
                     }
-
-                    /* add new, last line */
-                    j += 4;
-                    points[lineNum][j] = points[lineNum][j];
-                    points[lineNum][j + 1] = points[lineNum][j + 3];
-                    points[lineNum][j + 2] = points[lineNum][j + 2];
-                    points[lineNum][j + 3] = calcY(lineNum, xOffs + xRangeMT + 1);
+                    postInvalidate();
                 } else {
-                    points[lineNum][0] = 0;
-                    points[lineNum][1] = calcY(lineNum, xOffs);
-                    j = 2;
-                    for (int i = 1; i <= numPts; i++) {
-                        x = xPts[i];
-                        y = calcY(lineNum, xOffs + (int) (i * xSampFact));
-                        points[lineNum][j++] = x;
-                        points[lineNum][j++] = y;
-                        points[lineNum][j++] = x;
-                        points[lineNum][j++] = y;
-                    }
+                    /* The producer lapped the window while we read it, or it went stale: redo it */
+                    renderScheduler.request();
                 }
+            } finally {
+                renderScheduler.renderDone();
             }
+        }
+    }
 
-            numLinesDraw = (numPts < 1) ? 0 : numPts - 1;
-            //Log.i(TAG, "numLinesDraw=" + numLinesDraw);
-            prevXOffs = xOffs;
-            postInvalidate();
+    public void update() {
+        renderScheduler.request();
+    }
+
+    /**
+     * New samples were published; may be called from any thread.
+     */
+    public void incUpdate() {
+        followLive = true;
+        renderScheduler.request();
+    }
+
+    @Override
+    public void onRenderFrame() {
+        int changed = this.changed;
+        this.changed = 0;
+
+        /* No pass is running, so the frames can change hands */
+        if (renderToBitmap != (layer != null)) {
+            if (layer != null) releaseLayer();
+            else layer = new DataLayer(DATA_LINE_WIDTH);
         }
 
-        private float calcY(int lineNum, int idx) {
-            if (idx >= xMaxSize) idx = xMaxSize - 1;
-            float val = yVals[lineNum][idx];
-            if (val > yMax[lineNum])
-                return height - 1;
-            else if (val < yMin[lineNum])
-                return 1;
-            else
-                return (((val - yMin[lineNum]) / yRange[lineNum]) * height);
+        xSize = engine.xEnd();
+        chartView.updateXSize(xSize);
+        if (followLive) {
+            followLive = false;
+            xOffs = engine.clampXOffs(xSize - xRange);
+            chartView.updateXOffs(xOffs);
         }
-    }
 
-    public synchronized void update() {
+        engine.getStats().enqueued();
         lineRenderSvc.execute(new LineRenderer(xOffs, xRange, xSize, changed));
-        changed = 0;
+
         if ((changed & (CHANGED_XOFF | CHANGED_XRANGE)) != 0) {
             chartView.updateXRangeXOffs(xRange, xOffs);
         }
         if ((changed & CHANGED_YRANGE) != 0) {
-            chartView.updateYMinMaxRange(yMin, yMax, yRange);
-        }
-    }
-
-    public synchronized void incUpdate() {
-        xSize++;
-        xOffs = xSize - xRange;
-        xOffs = (xOffs < 0) ? 0 : xOffs;
-        chartView.updateXOffs(xOffs);
-
-        lineRenderSvc.execute(new LineRenderer(xOffs, xRange, xSize, changed));
-        changed = 0;
-    }
-
-    private void calcXPts() {
-        int range = (xRange < MAX_HORZ_POINTS) ? xRange : MAX_HORZ_POINTS;
-        float xRangeMO = range - 1;
-        for (int i = 0; i < range; i++) {
-            xPts[i] = (i * width) / xRangeMO;
+            chartView.updateYMinMaxRange();
         }
     }
 
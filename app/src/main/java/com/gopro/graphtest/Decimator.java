@@ -0,0 +1,262 @@
+package com.gopro.graphtest;
+
+/**
+ * Reduces a window of samples to a bounded number of vertices for drawing.
+ * Output vertices are (sample offset from window start, value) pairs.
+ */
+abstract class Decimator {
+
+    static final int MODE_STRIDE = 0;
+    static final int MODE_M4 = 1;
+    static final int MODE_LTTB = 2;
+
+    static Decimator create(int mode) {
+        switch (mode) {
+            case MODE_M4:
+                return new M4();
+            case MODE_LTTB:
+                return new Lttb();
+            default:
+                return new Stride();
+        }
+    }
+
+    /**
+     * Largest vertex count {@link #decimate} can produce for the given number of buckets.
+     */
+    static int maxPoints(int buckets) {
+        return (buckets + 2) * 4;
+    }
+
+    /**
+     * @param src     sample store
+     * @param column  column of the series in the store
+     * @param from    first sample index (inclusive)
+     * @param to      last sample index (exclusive)
+     * @param buckets target number of buckets, usually one per pixel column
+     * @param outX    receives vertex positions as sample offsets from {@code from}
+     * @param outY    receives vertex values
+     * @return number of vertices written
+     */
+    abstract int decimate(SampleSource src, int column, long from, long to, int buckets,
+                          float[] outX, float[] outY);
+
+    /**
+     * Same as {@link #decimate(SampleSource, int, long, long, int, float[], float[])},
+     * but may read from the level-of-detail index so the cost follows the bucket
+     * count instead of the window length.
+     */
+    int decimate(LodPyramid lod, SampleSource src, int column, long from, long to, int buckets,
+                 float[] outX, float[] outY) {
+        return decimate(src, column, from, to, buckets, outX, outY);
+    }
+
+    /**
+     * Picks one sample every (to - from) / buckets samples. Cheapest, but drops
+     * everything between the picked samples.
+     */
+    static final class Stride extends Decimator {
+        @Override
+        int decimate(SampleSource src, int column, long from, long to, int buckets,
+                     float[] outX, float[] outY) {
+            int len = (int) (to - from);
+            if (len < 2 || buckets < 1) return 0;
+
+            float step = (len <= buckets) ? 1F : (len / (float) buckets);
+            int n = 0;
+            for (float offs = 0; offs < len; offs += step) {
+                int i = (int) offs;
+                outX[n] = i;
+                outY[n++] = src.get(column, from + i);
+            }
+            if (outX[n - 1] != len - 1) {
+                outX[n] = len - 1;
+                outY[n++] = src.get(column, to - 1);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * M4: keeps the first, min, max and last sample of every bucket, in index
+     * order. Bucket edges are aligned to absolute sample indices so the output
+     * does not shimmer as the window scrolls.
+     */
+    static final class M4 extends Decimator {
+        @Override
+        int decimate(LodPyramid lod, SampleSource src, int column, long from, long to, int buckets,
+                     float[] outX, float[] outY) {
+            if (buckets > 0 && lod != null && lod.levelFor(from, to, buckets) > 0)
+                return lod.reduce(from, to, buckets, outX, outY);
+            return decimate(src, column, from, to, buckets, outX, outY);
+        }
+
+        @Override
+        int decimate(SampleSource src, int column, long from, long to, int buckets,
+                     float[] outX, float[] outY) {
+            long len = to - from;
+            if (len < 2 || buckets < 1) return 0;
+
+            double bucketSize = (len <= buckets) ? 1D : (len / (double) buckets);
+            long bucket = (long) (from / bucketSize);
+            int n = 0;
+            long i = from;
+
+            while (i < to) {
+                long end = (long) Math.ceil((bucket + 1) * bucketSize);
+                if (end <= i) end = i + 1;
+                if (end > to) end = to;
+
+                long minIdx = i, maxIdx = i;
+                float minVal = src.get(column, i), maxVal = minVal;
+                for (long k = i + 1; k < end; k++) {
+                    float val = src.get(column, k);
+                    if (val < minVal) {
+                        minVal = val;
+                        minIdx = k;
+                    } else if (val > maxVal) {
+                        maxVal = val;
+                        maxIdx = k;
+                    }
+                }
+
+                long midA = (minIdx < maxIdx) ? minIdx : maxIdx;
+                long midB = (minIdx < maxIdx) ? maxIdx : minIdx;
+                long last = end - 1;
+
+                outX[n] = i - from;
+                outY[n++] = src.get(column, i);
+                if (midA != i) {
+                    outX[n] = midA - from;
+                    outY[n++] = src.get(column, midA);
+                }
+                if (midB != midA && midB != i) {
+                    outX[n] = midB - from;
+                    outY[n++] = src.get(column, midB);
+                }
+                if (last != midB && last != i) {
+                    outX[n] = last - from;
+                    outY[n++] = src.get(column, last);
+                }
+
+                i = end;
+                bucket++;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: one sample per bucket, chosen to keep the
+     * visual shape of the trace. Always keeps the first and last sample. Over
+     * windows of more than {@link #maxPoints} samples it runs on their M4
+     * reduction, from the pyramid or else from the samples, so its scratch
+     * only grows with the bucket count.
+     */
+    static final class Lttb extends Decimator {
+        private final M4 m4 = new M4();
+        private float[] inX, inY;
+
+        @Override
+        int decimate(LodPyramid lod, SampleSource src, int column, long from, long to, int buckets,
+                     float[] outX, float[] outY) {
+            if (buckets < 1 || lod == null || lod.levelFor(from, to, buckets) < 1)
+                return decimate(src, column, from, to, buckets, outX, outY);
+
+            ensureInput(maxPoints(buckets));
+            int n = lod.reduce(from, to, buckets, inX, inY);
+            return lttb(inX, inY, n, buckets, outX, outY);
+        }
+
+        @Override
+        int decimate(SampleSource src, int column, long from, long to, int buckets,
+                     float[] outX, float[] outY) {
+            long len = to - from;
+            if (len < 2 || buckets < 1) return 0;
+
+            int max = maxPoints(buckets);
+            ensureInput(max);
+            if (len > max) {
+                int n = m4.decimate(src, column, from, to, buckets, inX, inY);
+                return lttb(inX, inY, n, buckets, outX, outY);
+            }
+            for (int i = 0; i < len; i++) {
+                inX[i] = i;
+                inY[i] = src.get(column, from + i);
+            }
+            return lttb(inX, inY, (int) len, buckets, outX, outY);
+        }
+
+        private void ensureInput(int size) {
+            if (inX == null || inX.length < size) {
+                inX = new float[size];
+                inY = new float[size];
+            }
+        }
+
+        private static int lttb(float[] xs, float[] ys, int len, int buckets,
+                                float[] outX, float[] outY) {
+            if (len < 2 || buckets < 1) return 0;
+
+            if (len <= buckets + 2) {
+                for (int i = 0; i < len; i++) {
+                    outX[i] = xs[i];
+                    outY[i] = ys[i];
+                }
+                return len;
+            }
+
+            float every = (len - 2) / (float) buckets;
+            int n = 0;
+            int a = 0;
+            outX[n] = xs[0];
+            outY[n++] = ys[0];
+
+            for (int b = 0; b < buckets; b++) {
+                /* Average of the next bucket is the third triangle vertex */
+                int avgStart = (int) ((b + 1) * every) + 1;
+                int avgEnd = (int) ((b + 2) * every) + 1;
+                if (avgEnd > len) avgEnd = len;
+                float avgX = 0, avgY = 0;
+                if (avgStart >= avgEnd) {
+                    avgX = xs[len - 1];
+                    avgY = ys[len - 1];
+                } else {
+                    for (int k = avgStart; k < avgEnd; k++) {
+                        avgX += xs[k];
+                        avgY += ys[k];
+                    }
+                    avgX /= (avgEnd - avgStart);
+                    avgY /= (avgEnd - avgStart);
+                }
+
+                int rangeStart = (int) (b * every) + 1;
+                int rangeEnd = (int) ((b + 1) * every) + 1;
+                if (rangeEnd > len - 1) rangeEnd = len - 1;
+
+                float ax = xs[a];
+                float ay = ys[a];
+                float maxArea = -1F;
+                int next = rangeStart;
+                for (int k = rangeStart; k < rangeEnd; k++) {
+                    float kx = xs[k];
+                    float area = Math.abs((ax - avgX) * (ys[k] - ay) - (ax - kx) * (avgY - ay));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        next = k;
+                    }
+                }
+                if (maxArea < 0) continue;
+
+                outX[n] = xs[next];
+                outY[n++] = ys[next];
+                a = next;
+            }
+
+            outX[n] = xs[len - 1];
+            outY[n++] = ys[len - 1];
+            return n;
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.gopro.graphtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets:
+ * bucket 0 counts zeros and bucket b counts values in [2^(b-1), 2^b).
+ * Cheap enough to record from hot paths on any thread; percentiles come
+ * back as the upper edge of their bucket, so within a factor of two.
+ */
+final class Histogram {
+
+    private static final int NUM_BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+
+        long curr;
+        while (value > (curr = max.get())) {
+            if (max.compareAndSet(curr, value)) break;
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Upper bound of the value below which the given fraction of the
+     * recorded values fall, e.g. 0.99 for the 99th percentile.
+     */
+    long getPercentile(double fraction) {
+        long total = count.get();
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                long upper = (b == 0) ? 0 : (b == NUM_BUCKETS - 1) ? Long.MAX_VALUE : (1L << b) - 1;
+                long m = max.get();
+                return (upper > m) ? m : upper;
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int b = 0; b < NUM_BUCKETS; b++) counts.set(b, 0);
+        count.set(0);
+        max.set(0);
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.gopro.graphtest;
+
+/**
+ * Formats numbers in scientific notation the way DecimalFormat("0.0E0") or
+ * ("0.00E0") does, but into a caller-supplied char[] so drawing labels does
+ * not allocate.
+ */
+final class LabelFormatter {
+
+    /* Longest output: sign, digit, point, 2 fraction digits, E, sign, 3 exponent digits */
+    static final int MAX_LENGTH = 11;
+
+    /* Powers of ten that doubles hold exactly */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /* 2^27 + 1, splits a double into halves whose products are exact */
+    private static final double SPLIT = 134217729.0;
+
+    private final int fractionDigits;
+    private final long minMantissa, maxMantissa;
+
+    LabelFormatter(int fractionDigits) {
+        this.fractionDigits = fractionDigits;
+        long pow = 1;
+        for (int i = 0; i < fractionDigits; i++) pow *= 10;
+        minMantissa = pow;
+        maxMantissa = pow * 10;
+    }
+
+    /**
+     * Writes value at out[off] and returns the offset just past it.
+     */
+    int format(double value, char[] out, int off) {
+        if (Double.isNaN(value)) return put("NaN", out, off);
+        if (value < 0) {
+            out[off++] = '-';
+            value = -value;
+        }
+        if (Double.isInfinite(value)) return put("\u221E", out, off);
+
+        long mantissa = 0;
+        int exp = 0;
+        if (value > 0) {
+            exp = (int) Math.floor(Math.log10(value));
+            mantissa = roundScaled(value, fractionDigits - exp);
+            /* log10 can be off by one either way near powers of ten */
+            if (mantissa >= maxMantissa) {
+                exp++;
+                mantissa = roundScaled(value, fractionDigits - exp);
+            } else if (mantissa < minMantissa) {
+                exp--;
+                mantissa = roundScaled(value, fractionDigits - exp);
+            }
+            if (mantissa >= maxMantissa) {
+                mantissa /= 10;
+                exp++;
+            }
+        }
+
+        /* Mantissa digits, with the point after the first one */
+        int end = off + fractionDigits + 2;
+        for (int i = end - 1; i > off + 1; i--) {
+            out[i] = (char) ('0' + mantissa % 10);
+            mantissa /= 10;
+        }
+        out[off + 1] = '.';
+        out[off] = (char) ('0' + mantissa);
+        off = end;
+
+        out[off++] = 'E';
+        if (exp < 0) {
+            out[off++] = '-';
+            exp = -exp;
+        }
+        if (exp >= 100) out[off++] = (char) ('0' + exp / 100);
+        if (exp >= 10) out[off++] = (char) ('0' + (exp / 10) % 10);
+        out[off++] = (char) ('0' + exp % 10);
+        return off;
+    }
+
+    /**
+     * Width of chars [off, end) given a table of ASCII advance widths.
+     */
+    static float measure(char[] chars, int off, int end, float[] advances) {
+        float w = 0;
+        for (int i = off; i < end; i++) {
+            char c = chars[i];
+            w += (c < advances.length) ? advances[c] : advances['0'];
+        }
+        return w;
+    }
+
+    /*
+     * value * 10^scale rounded half-even, as DecimalFormat rounds the exact
+     * value of the double. The scaling itself rounds, which can make a tie
+     * out of a value just off one, or miss one; its exact error settles those.
+     */
+    static long roundScaled(double value, int scale) {
+        int k = (scale < 0) ? -scale : scale;
+        if (k >= POW10.length) return (long) Math.rint(value * Math.pow(10, scale));
+
+        double p = POW10[k];
+        double q, err;
+        if (scale >= 0) {
+            q = value * p;
+            err = productError(value, p, q);
+        } else {
+            q = value / p;
+            double qp = q * p;
+            /* value - q * p exactly, which has the sign of the exact quotient - q */
+            err = (value - qp) - productError(q, p, qp);
+        }
+
+        double floor = Math.floor(q);
+        double frac = q - floor;
+        long m = (long) floor;
+        if (frac > 0.5 || (frac == 0.5 && (err > 0 || (err == 0 && (m & 1) != 0)))) m++;
+        return m;
+    }
+
+    /* a * b - ab exactly, ab being a * b rounded (Dekker) */
+    private static double productError(double a, double b, double ab) {
+        double c = SPLIT * a;
+        double aHi = c - (c - a), aLo = a - aHi;
+        c = SPLIT * b;
+        double bHi = c - (c - b), bLo = b - bHi;
+        return ((aHi * bHi - ab) + aHi * bLo + aLo * bHi) + aLo * bLo;
+    }
+
+    private static int put(String s, char[] out, int off) {
+        for (int i = 0; i < s.length(); i++) out[off++] = s.charAt(i);
+        return off;
+    }
+
+}
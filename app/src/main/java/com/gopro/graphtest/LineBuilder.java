@@ -0,0 +1,430 @@
+package com.gopro.graphtest;
+
+import java.util.Arrays;
+
+/**
+ * Turns the window of a series into line segments for Canvas.drawLines, in
+ * view pixels with y pointing up. Plain Java; holds scratch, so each thread
+ * needs its own.
+ * <p>
+ * In {@link #MODE_STRIP} every vertex is stored once, as x, y pairs of a
+ * polyline, and a vertex on the same pixel as the one before it is dropped;
+ * such lines are always rebuilt in full.
+ * <p>
+ * With a {@link TileCache}, M4-decimated index windows are put together
+ * from cached tiles, in columns of a power-of-two number of samples.
+ */
+final class LineBuilder {
+
+    static final int MODE_SEGMENTS = 0;
+    static final int MODE_STRIP = 1;
+
+    static final int MAX_HORZ_POINTS = 400;
+    static final int MAX_DECIM_COLUMNS = 2048;
+    static final int MAX_DECIM_POINTS = Decimator.maxPoints(MAX_DECIM_COLUMNS);
+    /* Pixels per decimation column in a coarse pass */
+    static final int COARSE_STEP = 4;
+
+    private final float[] decimX = new float[MAX_DECIM_POINTS];
+    private final float[] decimY = new float[MAX_DECIM_POINTS];
+    private final float[] colX = new float[Decimator.maxPoints(1)];
+    private final float[] colY = new float[Decimator.maxPoints(1)];
+    private TileCache tiles;
+    private final TileCache.Key tileKey = new TileCache.Key();
+    private Decimator decimator;
+    private int decimatorMode = -1;
+    private boolean strip;
+    private int columnStep = 1;
+
+    private float[] xPts;
+    private int width, height;
+    private int xRange, numPts;
+    private long xOffs, xSize;
+    private boolean timeBased;
+
+    /* The line being built, as it was when the build started */
+    private Series.Source src;
+    private Series.YScale scale;
+
+    void setDecimation(int mode) {
+        if (mode != decimatorMode) {
+            decimator = Decimator.create(mode);
+            decimatorMode = mode;
+        }
+    }
+
+    void setLineMode(int mode) {
+        strip = (mode == MODE_STRIP);
+    }
+
+    /**
+     * Decimates to one column every {@link #COARSE_STEP} pixels instead of
+     * every pixel, for passes that only need to keep up with a gesture.
+     */
+    void setCoarse(boolean coarse) {
+        columnStep = coarse ? COARSE_STEP : 1;
+    }
+
+    /**
+     * Cache that decimated index windows are read through, or null to
+     * decimate every window afresh.
+     */
+    void setTileCache(TileCache tiles) {
+        this.tiles = tiles;
+    }
+
+    /**
+     * @param xPts      vertex x positions from {@link #calcXPts}
+     * @param timeBased xOffs, xRange and xSize are timestamps, not indices
+     */
+    void setViewport(float[] xPts, int width, int height, long xOffs, int xRange, long xSize,
+                     boolean timeBased) {
+        this.xPts = xPts;
+        this.width = width;
+        this.height = height;
+        this.xOffs = xOffs;
+        this.xRange = xRange;
+        this.xSize = xSize;
+        this.timeBased = timeBased;
+        numPts = numSegments(xOffs, xRange, xSize);
+    }
+
+    /**
+     * Segments of an undecimated line over the window.
+     */
+    static int numSegments(long xOffs, int xRange, long xSize) {
+        int numPts = (int) (xSize - xOffs) - 1;
+        numPts = (numPts > xRange - 1) ? xRange - 1 : numPts;
+        return (numPts >= MAX_HORZ_POINTS) ? MAX_HORZ_POINTS - 1 : numPts;
+    }
+
+    /**
+     * x of every undecimated vertex slot; xPts needs MAX_HORZ_POINTS + 1 entries.
+     */
+    static void calcXPts(float[] xPts, int xRange, int width) {
+        int range = (xRange < MAX_HORZ_POINTS) ? xRange : MAX_HORZ_POINTS;
+        float xRangeMO = range - 1;
+        for (int i = 0; i < range; i++) {
+            xPts[i] = (i * width) / xRangeMO;
+        }
+    }
+
+    /**
+     * Takes the source and y range of s that the next lines are built from.
+     * {@link #build} does this itself.
+     */
+    void begin(Series s) {
+        src = s.source;
+        scale = s.scale;
+    }
+
+    /**
+     * Brings the segments of s in frame up to date with the viewport. shift is
+     * how far the viewport moved since the frame was built, or -1 if the
+     * frame cannot be reused.
+     */
+    void build(PointFrame frame, Series s, long shift) {
+        int lineNum = s.index;
+        /* log2 of floats per vertex; segments repeat every inner vertex */
+        int vertexShift = strip ? 1 : 2;
+
+        begin(s);
+        src.lod.update();
+
+        if (timeBased) {
+            int buckets = columns();
+            int size = Math.max(Decimator.maxPoints(buckets), MAX_HORZ_POINTS) << vertexShift;
+            frame.ensurePoints(lineNum, size);
+            frame.lineSegs[lineNum] = timeLine(frame.points[lineNum], s, buckets);
+            frame.heads[lineNum] = 0;
+            if (s.autoRange != null) trackRange(frame, s, s.winFrom, s.winTo);
+            return;
+        }
+
+        if (s.autoRange != null) {
+            long to = xOffs + xRange;
+            trackRange(frame, s, xOffs, (to > xSize) ? xSize : to);
+        }
+
+        if (xRange > MAX_HORZ_POINTS) {
+            int buckets = columns();
+            frame.ensurePoints(lineNum, Decimator.maxPoints(buckets) << vertexShift);
+            frame.lineSegs[lineNum] = decimateLine(frame.points[lineNum], buckets);
+            frame.heads[lineNum] = 0;
+            return;
+        }
+
+        if (strip) {
+            frame.ensurePoints(lineNum, MAX_HORZ_POINTS << 1);
+            frame.lineSegs[lineNum] = stripLine(frame.points[lineNum], numPts);
+            frame.heads[lineNum] = 0;
+            return;
+        }
+
+        /* A fresh buffer comes back empty and takes the full path below */
+        frame.ensurePoints(lineNum, MAX_HORZ_POINTS << 2);
+        float[] pts = frame.points[lineNum];
+        int segs = frame.lineSegs[lineNum];
+        if ((shift > 0) && (shift < numPts) && (segs == numPts)) {
+            frame.heads[lineNum] = scrollLine(pts, numPts, frame.heads[lineNum], (int) shift);
+        } else if ((shift == 0) && (segs <= numPts) && (frame.heads[lineNum] == 0)) {
+            frame.lineSegs[lineNum] = appendLine(pts, segs, numPts);
+        } else {
+            frame.lineSegs[lineNum] = fullLine(pts, numPts);
+            frame.heads[lineNum] = 0;
+        }
+    }
+
+    int fullLine(float[] pts, int numPts) {
+        return (numPts < 1) ? 0 : appendLine(pts, 0, numPts);
+    }
+
+    /* Segments [from, to) of an unwrapped ring */
+    int appendLine(float[] pts, int from, int to) {
+        if (to <= from) return from;
+        float prevX = xPts[from];
+        float prevY = calcY(xOffs + from);
+        int j = from << 2;
+        for (int i = from + 1; i <= to; i++) {
+            float x = xPts[i];
+            float y = calcY(xOffs + i);
+            pts[j++] = prevX;
+            pts[j++] = prevY;
+            pts[j++] = x;
+            pts[j++] = y;
+            prevX = x;
+            prevY = y;
+        }
+        return to;
+    }
+
+    /* Polyline through the numPts + 1 vertices of the window */
+    int stripLine(float[] pts, int numPts) {
+        if (numPts < 1) return 0;
+        int n = 0;
+        for (int i = 0; i <= numPts; i++) {
+            n = addVertex(pts, n, xPts[i], calcY(xOffs + i));
+        }
+        return (n > 1) ? n - 1 : 0;
+    }
+
+    /*
+     * Overwrite the oldest shift segments with the newest ones and move the
+     * head past them. The x of each slot never changes.
+     */
+    int scrollLine(float[] pts, int numSegs, int head, int shift) {
+        int keep = numSegs - shift;
+        float prevY = calcY(xOffs + keep);
+        for (int i = keep; i < numSegs; i++) {
+            int j = head << 2;
+            float y = calcY(xOffs + i + 1);
+            pts[j + 1] = prevY;
+            pts[j + 3] = y;
+            prevY = y;
+            if (++head == numSegs) head = 0;
+        }
+        return head;
+    }
+
+    int decimateLine(float[] pts, int buckets) {
+        long to = xOffs + xRange;
+        to = (to > xSize) ? xSize : to;
+        if ((to - xOffs < 2) || (buckets < 2)) return 0;
+
+        int n;
+        if (tiles != null && decimatorMode == Decimator.MODE_M4)
+            n = tiledLine(to, buckets);
+        else
+            n = decimator.decimate(src.lod, src.store, src.column, xOffs, to, buckets, decimX, decimY);
+        if (n < 2) return 0;
+
+        float xScale = width / (float) (xRange - 1);
+        for (int i = 0; i < n; i++) decimX[i] *= xScale;
+        return connect(pts, n);
+    }
+
+    /*
+     * The window's vertices copied out of tiles, in columns of the fewest
+     * samples that still make fewer columns than buckets. Tiles that are
+     * missing, or were cut short at an older live end, are built and cached.
+     * The first and last column may reach a little past the window.
+     */
+    private int tiledLine(long to, int buckets) {
+        int level = 0;
+        while (((to - xOffs) >> level) >= buckets) level++;
+        long colFrom = xOffs >> level;
+        long colTo = ((to - 1) >> level) + 1;
+
+        int n = 0;
+        for (long t = colFrom / TileCache.TILE_COLUMNS; t * TileCache.TILE_COLUMNS < colTo; t++) {
+            tileKey.set(src.store, src.column, level, t);
+            TileCache.Tile tile = tiles.get(tileKey, xSize);
+            if (tile == null) {
+                tile = buildTile(level, t);
+                tiles.put(tileKey, tile);
+            }
+            long tileCol = t * TileCache.TILE_COLUMNS;
+            int c0 = (colFrom > tileCol) ? (int) (colFrom - tileCol) : 0;
+            int c1 = (colTo - tileCol < TileCache.TILE_COLUMNS) ? (int) (colTo - tileCol) : TileCache.TILE_COLUMNS;
+            float offs = (tileCol << level) - xOffs;
+            for (int j = tile.starts[c0]; j < tile.starts[c1]; j++) {
+                decimX[n] = tile.x[j] + offs;
+                decimY[n++] = tile.y[j];
+            }
+        }
+        return n;
+    }
+
+    /* M4 of tile index at level, one column at a time, up to the newest sample of the pass */
+    private TileCache.Tile buildTile(int level, long index) {
+        int cols = TileCache.TILE_COLUMNS;
+        long from = (index * cols) << level;
+        long end = from + ((long) cols << level);
+        if (end > xSize) end = xSize;
+        long first = src.store.getFirst();
+        float[] x = new float[cols * 4];
+        float[] y = new float[cols * 4];
+        int[] starts = new int[cols + 1];
+        int n = 0;
+        for (int c = 0; c < cols; c++) {
+            starts[c] = n;
+            long b0 = from + ((long) c << level);
+            long b1 = b0 + (1L << level);
+            if (b0 < first) b0 = first;
+            if (b1 > end) b1 = end;
+            int k = 0;
+            if (b1 - b0 == 1) {
+                colX[0] = 0;
+                colY[0] = src.store.get(src.column, b0);
+                k = 1;
+            } else if (b1 > b0) {
+                k = decimator.decimate(src.lod, src.store, src.column, b0, b1, 1, colX, colY);
+                if (k > 4) k = foldColumn(k);
+            }
+            for (int j = 0; j < k; j++) {
+                x[n] = (b0 - from) + colX[j];
+                y[n++] = colY[j];
+            }
+        }
+        starts[cols] = n;
+        return new TileCache.Tile(Arrays.copyOf(x, n), Arrays.copyOf(y, n), starts, end);
+    }
+
+    /* A partial column can come back from the pyramid as two; keeps its first, min, max and last */
+    private int foldColumn(int k) {
+        int lo = 0, hi = 0;
+        for (int j = 1; j < k; j++) {
+            if (colY[j] < colY[lo]) lo = j;
+            if (colY[j] > colY[hi]) hi = j;
+        }
+        int a = (lo < hi) ? lo : hi, b = (lo < hi) ? hi : lo;
+        int n = 1;
+        if (a != 0) n = keep(n, a);
+        if (b != a && b != 0) n = keep(n, b);
+        if (k - 1 != b && k - 1 != 0) n = keep(n, k - 1);
+        return n;
+    }
+
+    private int keep(int n, int j) {
+        colX[n] = colX[j];
+        colY[n] = colY[j];
+        return n + 1;
+    }
+
+    /*
+     * Timestamped series: the window is a span of time, looked up in the
+     * store starting from where it was on the last pass. One sample either
+     * side is kept so the line runs up to the edges.
+     */
+    int timeLine(float[] pts, Series s, int buckets) {
+        SampleSource store = src.store;
+        long tFrom = xOffs;
+        long from = store.search(tFrom, s.winFrom);
+        long to = store.search(tFrom + xRange, s.winTo);
+        if (from > store.getFirst()) from--;
+        if (to < store.getCount()) to++;
+        s.winFrom = from;
+        s.winTo = to;
+        if ((to - from < 2) || (buckets < 2)) return 0;
+
+        int n;
+        if (to - from <= MAX_HORZ_POINTS) {
+            n = (int) (to - from);
+            for (int i = 0; i < n; i++) {
+                decimX[i] = i;
+                decimY[i] = store.get(src.column, from + i);
+            }
+        } else {
+            n = decimator.decimate(src.lod, store, src.column, from, to, buckets, decimX, decimY);
+            if (n < 2) return 0;
+        }
+
+        float xScale = width / (float) (xRange - 1);
+        for (int i = 0; i < n; i++) {
+            decimX[i] = (store.getTime(from + (long) decimX[i]) - tFrom) * xScale;
+        }
+        return connect(pts, n);
+    }
+
+    /* Min and max of samples [from, to) into the frame, for the UI to range on */
+    private void trackRange(PointFrame frame, Series s, long from, long to) {
+        if (s.range == null) s.range = new WindowRange();
+        s.range.update(src, from, to);
+        frame.dataMin[s.index] = s.range.getMin();
+        frame.dataMax[s.index] = s.range.getMax();
+    }
+
+    /* Segments through the n vertices in decimX (pixels) and decimY (values) */
+    private int connect(float[] pts, int n) {
+        if (strip) {
+            int verts = 0;
+            for (int i = 0; i < n; i++) verts = addVertex(pts, verts, decimX[i], scaleY(decimY[i]));
+            return (verts > 1) ? verts - 1 : 0;
+        }
+
+        pts[0] = decimX[0];
+        pts[1] = scaleY(decimY[0]);
+        int j = 2;
+        for (int i = 1; i < n; i++) {
+            float x = decimX[i];
+            float y = scaleY(decimY[i]);
+            pts[j++] = x;
+            pts[j++] = y;
+            pts[j++] = x;
+            pts[j++] = y;
+        }
+        return n - 1;
+    }
+
+    /* Stores vertex n of a strip unless it is on the pixel of vertex n - 1; returns the new count */
+    private static int addVertex(float[] pts, int n, float x, float y) {
+        if (n > 0) {
+            int j = (n - 1) << 1;
+            if ((int) x == (int) pts[j] && (int) y == (int) pts[j + 1]) return n;
+        }
+        pts[n << 1] = x;
+        pts[(n << 1) + 1] = y;
+        return n + 1;
+    }
+
+    private int columns() {
+        int columns = width / columnStep;
+        return (columns < MAX_DECIM_COLUMNS) ? columns : MAX_DECIM_COLUMNS;
+    }
+
+    float calcY(long idx) {
+        if (idx >= xSize) idx = xSize - 1;
+        return scaleY(src.store.get(src.column, idx));
+    }
+
+    float scaleY(float val) {
+        Series.YScale sc = scale;
+        if (val > sc.max)
+            return height - 1;
+        else if (val < sc.min)
+            return 1;
+        else
+            return (((val - sc.min) / sc.range) * height);
+    }
+
+}
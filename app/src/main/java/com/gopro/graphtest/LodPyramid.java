@@ -0,0 +1,225 @@
+package com.gopro.graphtest;
+
+/**
+ * Level-of-detail index over one series. Level L holds the first, min, max and
+ * last value of every run of 2^L samples, so a window can be reduced to pixel
+ * columns by reading about one bucket per column instead of every sample.
+ * Each level is a ring spanning the same samples as the {@link SampleSource}.
+ * Levels finer than {@link #MAX_BUCKETS} buckets per ring are not kept, so
+ * the index stays small over long on-disk histories; windows that would need
+ * them are read raw instead.
+ * <p>
+ * Only the render thread touches a pyramid: it is brought up to date with
+ * {@link #update} right before it is queried.
+ */
+final class LodPyramid {
+
+    static final int MAX_BUCKETS = 1 << 16;
+
+    private final SampleSource store;
+    private final int column;
+    private final int minLevel, numLevels;
+    private final float[][] first, min, max, last;
+    private final float[] edge = new float[2];
+    private long count;
+
+    LodPyramid(SampleSource store, int column) {
+        this.store = store;
+        this.column = column;
+
+        int capacity = store.getCapacity();
+        int levels = 0;
+        while ((capacity >> (levels + 1)) > 0) levels++;
+        numLevels = levels;
+        int lowest = 1;
+        while ((capacity >> lowest) > MAX_BUCKETS) lowest++;
+        minLevel = lowest;
+
+        int kept = (numLevels >= minLevel) ? numLevels - minLevel + 1 : 0;
+        first = new float[kept][];
+        min = new float[kept][];
+        max = new float[kept][];
+        last = new float[kept][];
+        for (int l = 0; l < kept; l++) {
+            int shift = minLevel + l;
+            int size = capacity >> shift;
+            first[l] = new float[size];
+            min[l] = new float[size];
+            max[l] = new float[size];
+            last[l] = new float[size];
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Folds every sample published to the store since the last call into
+     * every level.
+     */
+    void update() {
+        long newCount = store.getCount();
+        long i = count;
+        /* Fell more than a ring behind: restart every bucket at the oldest sample */
+        boolean restart = false;
+        if (i < store.getFirst()) {
+            i = store.getFirst();
+            restart = true;
+        }
+
+        for (; i < newCount; i++) {
+            float val = store.get(column, i);
+            for (int l = 0; l < first.length; l++) {
+                int shift = minLevel + l;
+                int b = (int) (i >> shift) & (first[l].length - 1);
+                if (restart || (i & ((1 << shift) - 1)) == 0) {
+                    first[l][b] = val;
+                    min[l][b] = val;
+                    max[l][b] = val;
+                } else {
+                    if (val < min[l][b]) min[l][b] = val;
+                    if (val > max[l][b]) max[l][b] = val;
+                }
+                last[l][b] = val;
+            }
+            restart = false;
+        }
+        count = newCount;
+    }
+
+    /**
+     * Coarsest level that still has at least one bucket per column, 0 meaning
+     * the raw samples. Levels that are not kept also come back as 0.
+     */
+    int levelFor(long from, long to, int columns) {
+        long perColumn = (to - from) / columns;
+        int level = 0;
+        while ((perColumn >> (level + 1)) > 0) level++;
+        if (level > numLevels) level = numLevels;
+        return (level < minLevel) ? 0 : level;
+    }
+
+    /**
+     * M4 reduction of samples [from, to) to the given number of columns, read
+     * from the coarsest suitable level. Output matches {@link Decimator#decimate}.
+     * The buckets cut by either end of the window are folded from finer
+     * levels and raw samples over the part inside it, so a spike just
+     * outside the window never shows at its edge.
+     */
+    int reduce(long from, long to, int columns, float[] outX, float[] outY) {
+        if (to > count) to = count;
+        int len = (int) (to - from);
+        if (len < 2 || columns < 1) return 0;
+
+        int level = levelFor(from, to, columns);
+        if (level < 1) return 0;
+        int l = level - minLevel;
+        float[] fst = first[l], mn = min[l], mx = max[l], lst = last[l];
+        int mask = fst.length - 1;
+
+        double perColumn = len / (double) columns;
+        long col = (long) (from / perColumn);
+        long b = from >> level;
+        long bTo = ((to - 1) >> level) + 1;
+        /* Buckets older than one ring have been reused */
+        if (bTo - b > mask + 1) b = bTo - mask - 1;
+        int n = 0;
+
+        while (b < bTo) {
+            long colEnd = (long) Math.ceil((col + 1) * perColumn);
+            long bEnd = (colEnd + (1 << level) - 1) >> level;
+            if (bEnd <= b) bEnd = b + 1;
+            if (bEnd > bTo) bEnd = bTo;
+
+            /* Edge buckets reach outside the window; only what is inside may show */
+            long minAt = b, maxAt = b;
+            float minVal = 0, maxVal = 0;
+            for (long k = b; k < bEnd; k++) {
+                float kMin, kMax;
+                long start = k << level, end = start + (1 << level);
+                if (start < from || end > to) {
+                    minMax((start < from) ? from : start, (end > to) ? to : end, edge);
+                    kMin = edge[0];
+                    kMax = edge[1];
+                } else {
+                    int slot = (int) k & mask;
+                    kMin = mn[slot];
+                    kMax = mx[slot];
+                }
+                if (k == b || kMin < minVal) {
+                    minVal = kMin;
+                    minAt = k;
+                }
+                if (k == b || kMax > maxVal) {
+                    maxVal = kMax;
+                    maxAt = k;
+                }
+            }
+
+            float xFirst = (b << level) - from;
+            float xLast = (bEnd << level) - 1 - from;
+            if (xFirst < 0) xFirst = 0;
+            if (xLast > len - 1) xLast = len - 1;
+            float xMin = bucketCenter(minAt, level, from, xFirst, xLast);
+            float xMax = bucketCenter(maxAt, level, from, xFirst, xLast);
+
+            outX[n] = xFirst;
+            outY[n++] = ((b << level) < from) ? store.get(column, from) : fst[(int) b & mask];
+            if (minAt <= maxAt) {
+                outX[n] = xMin;
+                outY[n++] = minVal;
+                outX[n] = xMax;
+                outY[n++] = maxVal;
+            } else {
+                outX[n] = xMax;
+                outY[n++] = maxVal;
+                outX[n] = xMin;
+                outY[n++] = minVal;
+            }
+            outX[n] = xLast;
+            outY[n++] = ((bEnd << level) > to) ? store.get(column, to - 1) : lst[(int) (bEnd - 1) & mask];
+
+            b = bEnd;
+            col++;
+        }
+        return n;
+    }
+
+    /**
+     * Smallest and largest value of samples [from, to) into out[0] and
+     * out[1], NaN if there are none. The range is covered by the largest
+     * aligned buckets that fit, so this reads O(levels) buckets plus under
+     * 2^minLevel raw samples at either end.
+     */
+    void minMax(long from, long to, float[] out) {
+        if (to > count) to = count;
+        float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+        long i = from;
+        while (i < to) {
+            int level = Long.numberOfTrailingZeros(i);
+            int fits = 63 - Long.numberOfLeadingZeros(to - i);
+            if (level > fits) level = fits;
+            if (level > numLevels) level = numLevels;
+            if (level < minLevel) {
+                float v = store.get(column, i++);
+                if (v < lo) lo = v;
+                if (v > hi) hi = v;
+                continue;
+            }
+            int l = level - minLevel;
+            int b = (int) (i >> level) & (first[l].length - 1);
+            if (min[l][b] < lo) lo = min[l][b];
+            if (max[l][b] > hi) hi = max[l][b];
+            i += 1L << level;
+        }
+        out[0] = (lo <= hi) ? lo : Float.NaN;
+        out[1] = (lo <= hi) ? hi : Float.NaN;
+    }
+
+    private static float bucketCenter(long b, int level, long from, float lo, float hi) {
+        float x = (b << level) + (1 << (level - 1)) - from;
+        return (x < lo) ? lo : (x > hi) ? hi : x;
+    }
+
+}
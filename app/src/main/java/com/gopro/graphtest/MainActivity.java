@@ -4,24 +4,56 @@ import android.app.Activity;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class MainActivity extends Activity {
 
     private static final String TAG = "~MainActivity";
 
     private static final int MAX_SAMPLES = 10000;
-    private static final int DISPLAY_WINDOW = 200;
+    /* About 11.5 hours at SAMPLE_INTERVAL */
+    private static final int HISTORY_SAMPLES = 1 << 22;
     private static final int SAMPLE_INTERVAL = 10;
+    private static final int DISPLAY_WINDOW = 200 * SAMPLE_INTERVAL;
+    private static final int MAX_BATCH = 64;
+    private static final long FEED_JOIN_MS = 500;
+
+    /* Start with -e replay <capture file> [--ef speed <N, 0 for max>] to replay a session */
+    private static final String EXTRA_REPLAY = "replay";
+    private static final String EXTRA_SPEED = "speed";
+    /* --ez overlay true shows the pipeline statistics over the chart */
+    private static final String EXTRA_OVERLAY = "overlay";
+    /* --ez autorange true fits each line's y range to what is on screen */
+    private static final String EXTRA_AUTO_RANGE = "autorange";
+    /* --ez strip true draws each line as one Path instead of separate segments */
+    private static final String EXTRA_STRIP = "strip";
+    /* --ez bitmap true rasterizes the lines on the render thread */
+    private static final String EXTRA_BITMAP = "bitmap";
+    /* --el refine <ms> idle time before a gesture is drawn in full detail again, 0 for never coarse */
+    private static final String EXTRA_REFINE = "refine";
+    /* --el tiles <bytes> budget of the decimated tile cache for index-based M4 charts; off if not given */
+    private static final String EXTRA_TILES = "tiles";
+    private static final int CAPTURE_BITS = 16;
 
     private ChartView chartView;
-    private final float[][] yVals = new float[3][MAX_SAMPLES];
-    private int sampleCount = 0;
+    private WritableSampleSource sampleStore;
     private final RandomData[] randomData = new RandomData[3];
     private DataFeed dataFeed;
+    private ReplayFeed replayFeed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        sampleStore = openHistory();
 
         randomData[0] = new RandomData(-1.00F, 1.00F, 0.02F, 1.3F, 0.4F, 15);
         randomData[1] = new RandomData(-1.00F, 1.00F, 0.02F, 1.3F, 0.4F, 15);
@@ -31,7 +63,7 @@ public class MainActivity extends Activity {
         chartView.setChartName("CHARTVIEW");
         chartView.setXRange(DISPLAY_WINDOW);
         chartView.setXOffs(0);
-        chartView.setXDispScale(1F / SAMPLE_INTERVAL);
+        chartView.setXDispScale(1F / 1000);
         chartView.setLineLabel(0, "LINE_RED");
         chartView.setLineLabel(1, "LINE_GREEN");
         chartView.setLineLabel(2, "LINE_BLUE");
@@ -42,9 +74,9 @@ public class MainActivity extends Activity {
         chartView.enableLine(1, true);
         chartView.enableLine(2, true);
         chartView.setLeftRight(2, 1);
-        chartView.setYVals(0, yVals[0]);
-        chartView.setYVals(1, yVals[1]);
-        chartView.setYVals(2, yVals[2]);
+        chartView.setYVals(0, sampleStore, 0);
+        chartView.setYVals(1, sampleStore, 1);
+        chartView.setYVals(2, sampleStore, 2);
         chartView.setYAbsMinMax(0, -1F, 1F);
         chartView.setYAbsMinMax(1, -1F, 1F);
         chartView.setYAbsMinMax(2, -2F, 2F);
@@ -53,8 +85,22 @@ public class MainActivity extends Activity {
         chartView.setYMinMax(2, -2F, 2F);
         chartView.setXRange(DISPLAY_WINDOW);
         chartView.setXOffs(0);
-        chartView.setXSize(0);
-        chartView.setXMaxSize(MAX_SAMPLES);
+        chartView.setDecimation(ChartView.DECIMATION_M4);
+        chartView.setLineMode(getIntent().getBooleanExtra(EXTRA_STRIP, false)
+                ? ChartView.LINE_MODE_STRIP : ChartView.LINE_MODE_SEGMENTS);
+        chartView.setRenderToBitmap(getIntent().getBooleanExtra(EXTRA_BITMAP, false));
+        if (getIntent().hasExtra(EXTRA_REFINE)) {
+            chartView.setRefineDelay(getIntent().getLongExtra(EXTRA_REFINE, 0));
+        }
+        if (getIntent().hasExtra(EXTRA_TILES)) {
+            chartView.setTileCacheSize(getIntent().getLongExtra(EXTRA_TILES, 0));
+        }
+        chartView.setDebugOverlay(getIntent().getBooleanExtra(EXTRA_OVERLAY, false));
+        if (getIntent().getBooleanExtra(EXTRA_AUTO_RANGE, false)) {
+            chartView.setAutoRange(0, true);
+            chartView.setAutoRange(1, true);
+            chartView.setAutoRange(2, true);
+        }
         //chartView.update();
         chartView.postDelayed(new Runnable() {
             @Override
@@ -63,78 +109,241 @@ public class MainActivity extends Activity {
             }
         }, 100);
 
-        dataFeed = new DataFeed();
-        dataFeed.pause(true);
-        dataFeed.start();
+        String replay = getIntent().getStringExtra(EXTRA_REPLAY);
+        if (replay != null) {
+            replayFeed = new ReplayFeed(new File(replay), getIntent().getFloatExtra(EXTRA_SPEED, 1F));
+            replayFeed.start();
+        } else {
+            dataFeed = new DataFeed(openCapture());
+            dataFeed.pause(true);
+            dataFeed.start();
+        }
     }
 
     @Override
     protected void onStart() {
         Log.i(TAG, "onStart: MainActivity");
         super.onStart();
-        dataFeed.pause(false);
+        if (dataFeed != null) dataFeed.pause(false);
+        if (replayFeed != null) replayFeed.pause(false);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        dataFeed.pause(true);
+        if (dataFeed != null) {
+            dataFeed.pause(true);
+            dataFeed.logStats();
+        }
+        if (replayFeed != null) replayFeed.pause(true);
+        Log.i(TAG, "chart:\n" + chartView.dumpStats());
     }
 
     @Override
     protected void onDestroy() {
-        dataFeed.interrupt();
+        /*
+         * The feeds are stopped before the history is closed; a render still
+         * in flight on the chart's threads is dropped by the store instead.
+         */
+        stopFeed(dataFeed);
+        stopFeed(replayFeed);
+        if (sampleStore instanceof MappedSampleStore) {
+            try {
+                ((MappedSampleStore) sampleStore).close();
+            } catch (IOException e) {
+                Log.w(TAG, "onDestroy: " + e);
+            }
+        }
         super.onDestroy();
     }
 
+    private static void stopFeed(Thread feed) {
+        if (feed == null) return;
+        feed.interrupt();
+        try {
+            feed.join(FEED_JOIN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (feed.isAlive()) Log.w(TAG, "stopFeed: " + feed.getName() + " still running");
+    }
+
+    /*
+     * A fresh on-disk history per run. If the cache is unusable, an in-memory
+     * one with 16-bit samples over the lines' absolute bounds, which holds
+     * twice the samples of a float store in the same memory.
+     */
+    private WritableSampleSource openHistory() {
+        try {
+            return new MappedSampleStore(new File(getCacheDir(), "history.smp"), 3, HISTORY_SAMPLES, true);
+        } catch (IOException e) {
+            Log.w(TAG, "openHistory: " + e);
+            QuantizedSampleStore store = new QuantizedSampleStore(3, 2 * MAX_SAMPLES, true, 16);
+            store.setBounds(0, -1F, 1F);
+            store.setBounds(1, -1F, 1F);
+            store.setBounds(2, -2F, 2F);
+            return store;
+        }
+    }
+
+    /* Every generated session is recorded, the previous one being overwritten */
+    private CaptureWriter openCapture() {
+        File file = new File(getCacheDir(), "session.cap");
+        try {
+            return new CaptureWriter(new BufferedOutputStream(new FileOutputStream(file)), 3,
+                    TimeUnit.MILLISECONDS.toNanos(1), CAPTURE_BITS);
+        } catch (IOException e) {
+            Log.w(TAG, "openCapture: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Generates samples at a fixed rate. Deadlines are absolute, so sleep
+     * overshoot does not add up into drift; whatever came due while the
+     * thread was held up is generated and appended as one batch.
+     */
     private class DataFeed extends Thread {
-        private volatile boolean paused;
+        private final CaptureWriter capture;
+        private final long period = TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL);
+        private final long startTime = System.nanoTime();
+        private final float[][] block = new float[3][MAX_BATCH];
+        private final long[] times = new long[MAX_BATCH];
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition resumed = lock.newCondition();
+        private boolean paused;
+
+        /* How late each wake-up was, and how long generating and publishing took */
+        private final Histogram deadlineMiss = new Histogram();
+        private final Histogram publishLatency = new Histogram();
+
+        DataFeed(CaptureWriter capture) {
+            this.capture = capture;
+        }
 
         @Override
         public void run() {
+            long deadline = System.nanoTime() + period;
+
             while (true) {
-                if (paused) {
-                    synchronized (this) {
-                        try {
-                            wait();
-                        } catch (InterruptedException e) {
-                            Log.i(TAG, "feedThread: Bye!");
-                            e.printStackTrace();
-                            return;
+                try {
+                    lock.lockInterruptibly();
+                    try {
+                        if (paused) {
+                            while (paused) resumed.await();
+                            /* Nothing was due while paused; start over from now */
+                            deadline = System.nanoTime() + period;
                         }
+                    } finally {
+                        lock.unlock();
                     }
-                }
 
-                try {
-                    Thread.sleep(SAMPLE_INTERVAL);
+                    long wait = deadline - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
                 } catch (InterruptedException e) {
-                    Log.i(TAG, "feedThread: Adios!");
+                    closeCapture();
+                    Log.i(TAG, "feedThread: Bye!");
                     return;
                 }
 
-                addNewSample(
-                        randomData[0].getNext(),
-                        randomData[1].getNext(),
-                        randomData[2].getNext());
+                long now = System.nanoTime();
+                deadlineMiss.record(now - deadline);
 
+                int due = (int) ((now - deadline) / period) + 1;
+                if (due > MAX_BATCH) due = MAX_BATCH;
+                for (int i = 0; i < due; i++) {
+                    times[i] = TimeUnit.NANOSECONDS.toMillis(deadline + i * period - startTime);
+                }
+                randomData[0].fillNext(block[0], 0, due);
+                randomData[1].fillNext(block[1], 0, due);
+                randomData[2].fillNext(block[2], 0, due);
+                chartView.appendSamples(times, block, 0, due);
+                if (capture != null) capture.appendSamples(times, block, 0, due);
+                publishLatency.record(System.nanoTime() - now);
+
+                /* Any backlog beyond one batch goes out on the next turn without waiting */
+                deadline += due * period;
             }
         }
 
-        public synchronized void pause(boolean isPause) {
-            paused = isPause;
-            if (!isPause) this.notify();
+        public void pause(boolean isPause) {
+            lock.lock();
+            try {
+                paused = isPause;
+                if (!isPause) resumed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void closeCapture() {
+            if (capture == null) return;
+            try {
+                capture.close();
+            } catch (IOException e) {
+                Log.w(TAG, "feedThread: capture " + e);
+            }
+        }
+
+        public void logStats() {
+            Log.i(TAG, String.format("feed: %d wake-ups, late p50 %d us p99 %d us max %d us",
+                    deadlineMiss.getCount(),
+                    TimeUnit.NANOSECONDS.toMicros(deadlineMiss.getPercentile(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(deadlineMiss.getPercentile(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(deadlineMiss.getMax())));
+            Log.i(TAG, String.format("feed: publish p50 %d us p99 %d us max %d us",
+                    TimeUnit.NANOSECONDS.toMicros(publishLatency.getPercentile(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(publishLatency.getPercentile(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(publishLatency.getMax())));
+            if (capture != null) {
+                Log.i(TAG, String.format("feed: captured %d bytes, %d samples dropped",
+                        capture.getBytesWritten(), capture.getDropped()));
+            }
         }
     }
 
-    private void addNewSample(float sample0, float sample1, float sample2) {
-        //Log.i(TAG, "addNewSample: " + sample);
-        if (sampleCount >= 400) return;
-        yVals[0][sampleCount] = sample0;
-        yVals[1][sampleCount] = sample1;
-        yVals[2][sampleCount] = sample2;
-        sampleCount++;
-        //chartView.setXOffs(sampleCount - DISPLAY_WINDOW);
-        chartView.incUpdate();
+    /**
+     * Replays a recorded session into the chart, paced by its timestamps.
+     */
+    private class ReplayFeed extends Thread {
+        private final File file;
+        private final float speed;
+        private CaptureReader reader;
+        private boolean paused;
+
+        ReplayFeed(File file, float speed) {
+            this.file = file;
+            this.speed = speed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                CaptureReader reader = new CaptureReader(
+                        new BufferedInputStream(new FileInputStream(file), 1 << 16));
+                synchronized (this) {
+                    this.reader = reader;
+                    reader.pause(paused);
+                }
+                try {
+                    long start = System.nanoTime();
+                    long count = reader.replay(chartView, speed);
+                    Log.i(TAG, String.format("replay: %d samples in %d ms", count,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "replay: " + e);
+            } catch (InterruptedException e) {
+                Log.i(TAG, "replay: Bye!");
+            }
+        }
+
+        public synchronized void pause(boolean isPause) {
+            paused = isPause;
+            if (reader != null) reader.pause(isPause);
+        }
     }
 
 }
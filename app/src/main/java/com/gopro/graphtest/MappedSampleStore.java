@@ -0,0 +1,332 @@
+package com.gopro.graphtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of samples kept in a memory-mapped file instead of the heap, for
+ * histories far longer than fit in memory.
+ * <p>
+ * The file is a header page followed by fixed-size chunks of
+ * {@link #CHUNK_SAMPLES} samples, each chunk holding the timestamps and then
+ * one column after the other. Chunks are mapped on first access and at most
+ * {@link #MAX_MAPPED} of them stay mapped, so reading a window only touches
+ * the pages behind it and the heap cost does not grow with the history.
+ * <p>
+ * The threading rules and ring semantics are those of {@link SampleStore}.
+ * The published count is kept in the header, so a store reopened with
+ * {@link #open} shows its history straight away.
+ */
+public final class MappedSampleStore implements WritableSampleSource {
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SAMPLES = 1 << CHUNK_SHIFT;
+    static final int MAX_MAPPED = 32;
+
+    private static final int MAGIC = 0x47545353;  // "GTSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int COUNT_OFFSET = 24;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final MappedByteBuffer header;
+    private final int numColumns;
+    private final boolean timestamped;
+    private final int capacity;
+    private final int mask;
+    private final int chunkBytes;
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final int[] mapped = new int[MAX_MAPPED];
+    private int nextMapped;
+    private volatile long count;
+    private volatile long reserved;
+    /* See SampleStore.isIntact */
+    private volatile int readFence;
+    private volatile boolean closed;
+    private Chunk deadChunk;
+
+    private static final class Chunk {
+        /* Null for the dead chunk */
+        final MappedByteBuffer buffer;
+        final LongBuffer times;
+        final FloatBuffer[] columns;
+
+        Chunk(MappedByteBuffer buffer, LongBuffer times, FloatBuffer[] columns) {
+            this.buffer = buffer;
+            this.times = times;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Creates a new, empty store, replacing whatever the file held.
+     */
+    public MappedSampleStore(File path, int numColumns, int minCapacity, boolean timestamped)
+            throws IOException {
+        this(new RandomAccessFile(path, "rw"), FileChannel.MapMode.READ_WRITE,
+                numColumns, capacityFor(minCapacity), timestamped, true);
+    }
+
+    /**
+     * Opens a store created earlier, keeping its history. A read-only store
+     * throws {@link java.nio.ReadOnlyBufferException} on writes.
+     */
+    public static MappedSampleStore open(File path, boolean writable) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, writable ? "rw" : "r");
+        try {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION)
+                throw new IOException("Not a sample store: " + path);
+            int numColumns = file.readInt();
+            int capacity = file.readInt();
+            boolean timestamped = file.readInt() != 0;
+            if (numColumns < 1 || capacity < CHUNK_SAMPLES || Integer.bitCount(capacity) != 1)
+                throw new IOException("Corrupt sample store: " + path);
+            return new MappedSampleStore(file, writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, numColumns, capacity, timestamped, false);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private MappedSampleStore(RandomAccessFile file, FileChannel.MapMode mode, int numColumns,
+                              int capacity, boolean timestamped, boolean create) throws IOException {
+        if (numColumns < 1) throw new IllegalArgumentException("numColumns < 1");
+        this.file = file;
+        this.mode = mode;
+        this.numColumns = numColumns;
+        this.timestamped = timestamped;
+        this.capacity = capacity;
+        mask = capacity - 1;
+        chunkBytes = CHUNK_SAMPLES * ((timestamped ? 8 : 0) + 4 * numColumns);
+        chunks = new AtomicReferenceArray<Chunk>(capacity >> CHUNK_SHIFT);
+        for (int i = 0; i < MAX_MAPPED; i++) mapped[i] = -1;
+
+        channel = file.getChannel();
+        if (create) channel.truncate(0);
+        header = channel.map(mode, 0, HEADER_SIZE);
+        if (create) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, numColumns);
+            header.putInt(12, capacity);
+            header.putInt(16, timestamped ? 1 : 0);
+            header.putLong(COUNT_OFFSET, 0);
+        }
+        count = header.getLong(COUNT_OFFSET);
+        reserved = count;
+    }
+
+    private static int capacityFor(int minCapacity) {
+        int cap = CHUNK_SAMPLES;
+        while (cap < minCapacity) cap <<= 1;
+        return cap;
+    }
+
+    public boolean hasTimes() {
+        return timestamped;
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFirst() {
+        long c = count;
+        return (c > capacity) ? c - capacity : 0;
+    }
+
+    public void append(long[] times, float[][] block, int offset, int count) {
+        writeTimes(times, offset, count);
+        append(block, offset, count);
+    }
+
+    public void append(float[][] block, int offset, int count) {
+        for (int col = 0; col < numColumns; col++) {
+            write(col, block[col], offset, count);
+        }
+        publish(this.count + count);
+    }
+
+    public void write(int column, float[] src, int offset, int count) {
+        copyIn(column, src, null, offset, count);
+    }
+
+    public void writeTimes(long[] src, int offset, int count) {
+        copyIn(-1, null, src, offset, count);
+    }
+
+    /*
+     * Readers only use absolute gets, so the producer can move the shared
+     * buffers' positions for the relative bulk puts.
+     */
+    private void copyIn(int column, float[] vals, long[] times, int offset, int count) {
+        reserve(this.count + count);
+        int skip = (count > capacity) ? count - capacity : 0;
+        long idx = this.count + skip;
+        int done = skip;
+        while (done < count) {
+            int slot = (int) idx & (CHUNK_SAMPLES - 1);
+            int len = CHUNK_SAMPLES - slot;
+            if (len > count - done) len = count - done;
+            Chunk chunk = chunk(idx);
+            if (times != null) {
+                chunk.times.position(slot);
+                chunk.times.put(times, offset + done, len);
+            } else {
+                chunk.columns[column].position(slot);
+                chunk.columns[column].put(vals, offset + done, len);
+            }
+            idx += len;
+            done += len;
+        }
+    }
+
+    public void publish(long newCount) {
+        reserve(newCount);
+        if (newCount > count) {
+            header.putLong(COUNT_OFFSET, newCount);
+            count = newCount;
+        }
+    }
+
+    private void reserve(long end) {
+        if (end > reserved) reserved = end;
+    }
+
+    public float get(int column, long idx) {
+        return chunk(idx).columns[column].get((int) idx & (CHUNK_SAMPLES - 1));
+    }
+
+    public long getTime(long idx) {
+        return chunk(idx).times.get((int) idx & (CHUNK_SAMPLES - 1));
+    }
+
+    public long search(long time, long hint) {
+        return SampleStore.search(this, time, hint);
+    }
+
+    /**
+     * Same rule as {@link SampleStore#isIntact(long)}.
+     */
+    public boolean isIntact(long from) {
+        readFence = 0;
+        return !closed && from >= reserved - capacity;
+    }
+
+    /**
+     * Maps the chunks behind samples [from, to) and reads their pages in.
+     * Only the first MAX_MAPPED / 2 chunks are loaded, so a prefetch never
+     * unmaps the chunks of the window being drawn.
+     */
+    public void prefetch(long from, long to) {
+        long first = getFirst();
+        if (from < first) from = first;
+        if (to > count) to = count;
+        if (to <= from) return;
+        long c = from >> CHUNK_SHIFT;
+        long last = (to - 1) >> CHUNK_SHIFT;
+        if (last >= c + MAX_MAPPED / 2) last = c + MAX_MAPPED / 2 - 1;
+        for (; c <= last; c++) {
+            Chunk chunk = chunk(c << CHUNK_SHIFT);
+            if (chunk.buffer != null) chunk.buffer.load();
+        }
+    }
+
+    /**
+     * Writes the mapped pages out to the file.
+     */
+    public void force() {
+        for (int i = 0; i < chunks.length(); i++) {
+            Chunk chunk = chunks.get(i);
+            if (chunk != null) chunk.buffer.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Closes the file. Chunks still mapped stay readable; a chunk that would
+     * need mapping reads back zeros and drops writes, and {@link #isIntact}
+     * is false from now on, so a reader still in flight drops what it read
+     * instead of failing.
+     */
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+        file.close();
+    }
+
+    private Chunk chunk(long idx) {
+        int i = (int) (idx & mask) >> CHUNK_SHIFT;
+        Chunk chunk = chunks.get(i);
+        return (chunk != null) ? chunk : map(i);
+    }
+
+    /* Maps chunk i, unmapping the chunk mapped longest ago once MAX_MAPPED are */
+    private synchronized Chunk map(int i) {
+        Chunk chunk = chunks.get(i);
+        if (chunk != null) return chunk;
+        if (closed) return deadChunk();
+
+        MappedByteBuffer buf;
+        try {
+            buf = channel.map(mode, HEADER_SIZE + (long) i * chunkBytes, chunkBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map sample chunk " + i, e);
+        }
+        chunk = newChunk(buf, buf);
+
+        int evict = mapped[nextMapped];
+        if (evict >= 0) chunks.set(evict, null);
+        mapped[nextMapped] = i;
+        nextMapped = (nextMapped + 1) % MAX_MAPPED;
+        chunks.set(i, chunk);
+        return chunk;
+    }
+
+    /* Stands in for every unmapped chunk once the store is closed */
+    private Chunk deadChunk() {
+        if (deadChunk == null) deadChunk = newChunk(ByteBuffer.allocateDirect(chunkBytes), null);
+        return deadChunk;
+    }
+
+    private Chunk newChunk(ByteBuffer buf, MappedByteBuffer mapped) {
+        LongBuffer times = null;
+        int offs = 0;
+        if (timestamped) {
+            times = slice(buf, offs, CHUNK_SAMPLES * 8).asLongBuffer();
+            offs += CHUNK_SAMPLES * 8;
+        }
+        FloatBuffer[] columns = new FloatBuffer[numColumns];
+        for (int col = 0; col < numColumns; col++) {
+            columns[col] = slice(buf, offs, CHUNK_SAMPLES * 4).asFloatBuffer();
+            offs += CHUNK_SAMPLES * 4;
+        }
+        return new Chunk(mapped, times, columns);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        buf.limit(offset + length);
+        buf.position(offset);
+        return buf.slice().order(ByteOrder.nativeOrder());
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.gopro.graphtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a {@link Raster} as an 8-bit RGB PNG using only java.util.zip.
+ * Reusable, but not thread-safe.
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final CRC32 crc = new CRC32();
+    private final ByteArrayOutputStream idat = new ByteArrayOutputStream();
+    private final Deflater deflater;
+    private byte[] row = new byte[0];
+
+    PngEncoder(int level) {
+        deflater = new Deflater(level);
+    }
+
+    void write(Raster raster, OutputStream out) throws IOException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int[] pixels = raster.getPixels();
+
+        /* Each row: filter type 0, then R, G, B per pixel */
+        int rowLen = 1 + width * 3;
+        if (row.length < rowLen) row = new byte[rowLen];
+        idat.reset();
+        deflater.reset();
+        DeflaterOutputStream zip = new DeflaterOutputStream(idat, deflater, 8192);
+        for (int y = 0; y < height; y++) {
+            int j = 1;
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int p = pixels[i];
+                row[j++] = (byte) (p >> 16);
+                row[j++] = (byte) (p >> 8);
+                row[j++] = (byte) p;
+            }
+            zip.write(row, 0, rowLen);
+        }
+        zip.finish();
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+
+        out.write(SIGNATURE);
+        writeChunk(out, "IHDR", header, header.length);
+        writeChunk(out, "IDAT", idat.toByteArray(), idat.size());
+        writeChunk(out, "IEND", header, 0);
+    }
+
+    void release() {
+        deflater.end();
+    }
+
+    private void writeChunk(OutputStream out, String type, byte[] data, int len) throws IOException {
+        byte[] word = new byte[4];
+        putInt(word, 0, len);
+        out.write(word);
+
+        byte[] typeBytes = {(byte) type.charAt(0), (byte) type.charAt(1),
+                (byte) type.charAt(2), (byte) type.charAt(3)};
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, len);
+        out.write(typeBytes);
+        out.write(data, 0, len);
+
+        putInt(word, 0, (int) crc.getValue());
+        out.write(word);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+}
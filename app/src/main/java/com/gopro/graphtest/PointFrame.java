@@ -0,0 +1,70 @@
+package com.gopro.graphtest;
+
+/**
+ * Line segments for every series as built by one render pass, plus the
+ * window they were built for.
+ * <p>
+ * Undecimated lines are kept as a ring of segments so scrolling only writes
+ * the new ones: segment slot s always spans x = s * dx to (s + 1) * dx, the
+ * oldest visible segment sits at slot heads[line], and the view translates
+ * the two halves of the ring into place when drawing.
+ * <p>
+ * Only the render side resizes a frame, and only while it is the back buffer.
+ */
+final class PointFrame {
+
+    float[][] points = new float[0][];
+    int[] lineSegs = new int[0];
+    int[] heads = new int[0];
+    float dx;
+    /* Lines are LineBuilder.MODE_STRIP polylines of lineSegs + 1 vertices, heads all 0 */
+    boolean strip;
+
+    /* Min and max of each auto-ranged line's window, NaN if it is empty */
+    float[] dataMin = new float[0];
+    float[] dataMax = new float[0];
+
+    /* Render thread bookkeeping: what this frame currently holds */
+    long xOffs = -1;
+    int gen = -1;
+
+    /* ChartStats.getPendingSince() when the pass started; cleared once drawn */
+    long dataNanos;
+
+    int getNumLines() {
+        return lineSegs.length;
+    }
+
+    void ensureLines(int numLines) {
+        if (numLines <= lineSegs.length) return;
+
+        float[][] grownPoints = new float[numLines][];
+        int[] grownSegs = new int[numLines];
+        int[] grownHeads = new int[numLines];
+        float[] grownMin = new float[numLines];
+        float[] grownMax = new float[numLines];
+        System.arraycopy(points, 0, grownPoints, 0, points.length);
+        System.arraycopy(lineSegs, 0, grownSegs, 0, lineSegs.length);
+        System.arraycopy(heads, 0, grownHeads, 0, heads.length);
+        System.arraycopy(dataMin, 0, grownMin, 0, dataMin.length);
+        System.arraycopy(dataMax, 0, grownMax, 0, dataMax.length);
+        points = grownPoints;
+        lineSegs = grownSegs;
+        heads = grownHeads;
+        dataMin = grownMin;
+        dataMax = grownMax;
+    }
+
+    /**
+     * True if the line already has room for size floats; otherwise gives it
+     * a new, empty buffer of that size and returns false.
+     */
+    boolean ensurePoints(int line, int size) {
+        if (points[line] != null && points[line].length >= size) return true;
+        points[line] = new float[size];
+        lineSegs[line] = 0;
+        heads[line] = 0;
+        return false;
+    }
+
+}
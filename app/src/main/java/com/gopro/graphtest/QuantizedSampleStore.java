@@ -0,0 +1,230 @@
+package com.gopro.graphtest;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer like {@link SampleStore} that keeps each value as an 8 or
+ * 16-bit code instead of a float, for two to four times the history in the
+ * same memory.
+ * <p>
+ * Every block of {@link #BLOCK_SAMPLES} samples of a column has its own
+ * offset and step. A column given fixed bounds with {@link #setBounds} uses
+ * them for every block and values are clamped to them. Otherwise a block is
+ * scaled to its own min/max: its samples are held as floats until the block
+ * is full and only then encoded, so the newest samples are exact. Either
+ * way the error is at most half a step, (max - min) / (2^bits - 2) / 2, give
+ * or take float rounding. NaN is kept as a reserved code; infinities are
+ * clamped.
+ * <p>
+ * Threading is as in SampleStore. A block is encoded as soon as it fills,
+ * but it is read from the staged floats until the next one fills too, so a
+ * reader that has seen {@link #getCount()} never needs a lock or a volatile
+ * read per sample to avoid a half-encoded block. The last four blocks are
+ * staged; a reader that stalls while the producer writes three more can
+ * read a newer value, which {@link #isIntact} does not catch.
+ */
+public final class QuantizedSampleStore implements WritableSampleSource {
+
+    static final int BLOCK_SHIFT = 8;
+    static final int BLOCK_SAMPLES = 1 << BLOCK_SHIFT;
+    private static final int STAGE_MASK = 4 * BLOCK_SAMPLES - 1;
+
+    private final byte[][] codes8;
+    private final short[][] codes16;
+    private final long[] times;
+    private final float[][] base, step;
+    private final float[][] stage;
+    private final boolean[] fixed;
+    private final int[] sealed;
+    private final int capacity;
+    private final int mask;
+    private final int levels;
+    private final int nanCode;
+    private volatile long count;
+    private volatile long reserved;
+    /* See SampleStore.isIntact */
+    private volatile int readFence;
+
+    /**
+     * @param bits 8 or 16
+     */
+    public QuantizedSampleStore(int numColumns, int minCapacity, boolean timestamped, int bits) {
+        if (bits != 8 && bits != 16) throw new IllegalArgumentException("bits must be 8 or 16");
+        int cap = BLOCK_SAMPLES;
+        while (cap < minCapacity) cap <<= 1;
+        capacity = cap;
+        mask = cap - 1;
+        nanCode = (1 << bits) - 1;
+        levels = nanCode - 1;
+
+        codes8 = (bits == 8) ? new byte[numColumns][cap] : null;
+        codes16 = (bits == 16) ? new short[numColumns][cap] : null;
+        times = timestamped ? new long[cap] : null;
+        base = new float[numColumns][cap >> BLOCK_SHIFT];
+        step = new float[numColumns][cap >> BLOCK_SHIFT];
+        stage = new float[numColumns][STAGE_MASK + 1];
+        fixed = new boolean[numColumns];
+        sealed = new int[numColumns];
+    }
+
+    /**
+     * Scales a column to fixed bounds, typically those given to
+     * ChartView.setYAbsMinMax, instead of per block. Call before appending.
+     */
+    public void setBounds(int column, float min, float max) {
+        if (!(max > min)) throw new IllegalArgumentException("max must be greater than min");
+        Arrays.fill(base[column], min);
+        Arrays.fill(step[column], (max - min) / levels);
+        fixed[column] = true;
+    }
+
+    /**
+     * Largest difference between a value stored in the column and the value
+     * read back; for block-scaled columns, of the block holding idx.
+     */
+    public float getMaxError(int column, long idx) {
+        return step[column][((int) idx & mask) >> BLOCK_SHIFT] / 2;
+    }
+
+    public boolean hasTimes() {
+        return times != null;
+    }
+
+    public int getNumColumns() {
+        return base.length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFirst() {
+        long c = count;
+        return (c > capacity) ? c - capacity : 0;
+    }
+
+    public void append(long[] times, float[][] block, int offset, int count) {
+        writeTimes(times, offset, count);
+        append(block, offset, count);
+    }
+
+    public void append(float[][] block, int offset, int count) {
+        for (int col = 0; col < base.length; col++) {
+            write(col, block[col], offset, count);
+        }
+        publish(this.count + count);
+    }
+
+    public void write(int column, float[] src, int offset, int count) {
+        reserve(this.count + count);
+        int skip = (count > capacity) ? count - capacity : 0;
+        long idx = this.count + skip;
+        if (fixed[column]) {
+            for (int i = skip; i < count; i++, idx++) {
+                encode(column, (int) idx & mask, src[offset + i]);
+            }
+            return;
+        }
+
+        float[] stg = stage[column];
+        for (int i = skip; i < count; i++, idx++) {
+            stg[(int) idx & STAGE_MASK] = src[offset + i];
+            if (((idx + 1) & (BLOCK_SAMPLES - 1)) == 0) seal(column, idx + 1 - BLOCK_SAMPLES);
+        }
+    }
+
+    public void writeTimes(long[] src, int offset, int count) {
+        reserve(this.count + count);
+        int skip = (count > capacity) ? count - capacity : 0;
+        long c = this.count + skip;
+        int slot = (int) c & mask;
+        int len = count - skip;
+        int first = (len < capacity - slot) ? len : capacity - slot;
+        System.arraycopy(src, offset + skip, times, slot, first);
+        System.arraycopy(src, offset + skip + first, times, 0, len - first);
+    }
+
+    public void publish(long newCount) {
+        reserve(newCount);
+        if (newCount > count) count = newCount;
+    }
+
+    private void reserve(long end) {
+        if (end > reserved) reserved = end;
+    }
+
+    public float get(int column, long idx) {
+        /* Blocks counted in wrapping ints, so the check cannot tear on 32-bit */
+        if (!fixed[column] && (int) (idx >> BLOCK_SHIFT) - sealed[column] >= -1)
+            return stage[column][(int) idx & STAGE_MASK];
+
+        int slot = (int) idx & mask;
+        int code = (codes16 != null) ? codes16[column][slot] & 0xFFFF : codes8[column][slot] & 0xFF;
+        if (code == nanCode) return Float.NaN;
+        int b = slot >> BLOCK_SHIFT;
+        return base[column][b] + code * step[column][b];
+    }
+
+    public long getTime(long idx) {
+        return times[(int) idx & mask];
+    }
+
+    public long search(long time, long hint) {
+        return SampleStore.search(this, time, hint);
+    }
+
+    /**
+     * Same rule as {@link SampleStore#isIntact(long)}.
+     */
+    public boolean isIntact(long from) {
+        readFence = 0;
+        return from >= reserved - capacity;
+    }
+
+    public void prefetch(long from, long to) {
+    }
+
+    /* Encodes the full staged block starting at from */
+    private void seal(int column, long from) {
+        float[] stg = stage[column];
+        int at = (int) from & STAGE_MASK;
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < BLOCK_SAMPLES; i++) {
+            float v = stg[at + i];
+            if (Float.isInfinite(v)) continue;
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        if (min > max) min = max = 0;
+
+        int slot = (int) from & mask;
+        int b = slot >> BLOCK_SHIFT;
+        base[column][b] = min;
+        step[column][b] = (max > min) ? (max - min) / levels : 0F;
+        for (int i = 0; i < BLOCK_SAMPLES; i++) {
+            encode(column, slot + i, stg[at + i]);
+        }
+        sealed[column] = (int) (from >> BLOCK_SHIFT) + 1;
+    }
+
+    private void encode(int column, int slot, float v) {
+        int b = slot >> BLOCK_SHIFT;
+        float s = step[column][b];
+        int code;
+        if (v != v) {
+            code = nanCode;
+        } else {
+            float q = (s > 0) ? (v - base[column][b]) / s : 0F;
+            code = (q <= 0) ? 0 : (q >= levels) ? levels : Math.round(q);
+        }
+        if (codes16 != null)
+            codes16[column][slot] = (short) code;
+        else
+            codes8[column][slot] = (byte) code;
+    }
+
+}
@@ -1,13 +1,14 @@
 package com.gopro.graphtest;
 
-import junit.framework.Assert;
-
-import java.util.Random;
-
+/**
+ * Random walk with noise, bounded to [min, max]. Each instance is one
+ * reproducible stream; it is not thread-safe, so give each producer thread
+ * its own, e.g. from {@link #split()}.
+ */
 class RandomData {
     private static final String LOG_TAG = "~RandomData";
 
-    private final Random random;
+    private final SplitRandom random;
     private final float min;
     private final float max;
     private final float noise;
@@ -16,6 +17,7 @@ class RandomData {
     private final float timespan;
 
     private final float range;
+    private final float[] one = new float[1];
     private float currValue;
 
     private int walkDuration = 0;
@@ -24,8 +26,17 @@ class RandomData {
     private float mean = 0;
 
     public RandomData(float min, float max, float noise, float volatility, float jerkiness, float timespan) {
-        Assert.assertTrue(min < max);
-        Assert.assertTrue(jerkiness <= 1.0F);
+        this(new SplitRandom(System.nanoTime() ^ System.identityHashCode(new Object())),
+                min, max, noise, volatility, jerkiness, timespan);
+    }
+
+    public RandomData(long seed, float min, float max, float noise, float volatility, float jerkiness, float timespan) {
+        this(new SplitRandom(seed), min, max, noise, volatility, jerkiness, timespan);
+    }
+
+    RandomData(SplitRandom random, float min, float max, float noise, float volatility, float jerkiness, float timespan) {
+        if (!(min < max)) throw new IllegalArgumentException("min must be below max");
+        if (!(jerkiness <= 1.0F)) throw new IllegalArgumentException("jerkiness must be at most 1");
 
         this.range = max - min;
         this.mean = (max + min) * 0.5F;
@@ -36,26 +47,56 @@ class RandomData {
         this.noise = noise;
         this.timespan = timespan;
 
-        random = new Random();
+        this.random = random;
         currValue = this.min + (range * random.nextFloat());
     }
 
+    /**
+     * New, independent stream with the same parameters, seeded from this one.
+     */
+    public RandomData split() {
+        return new RandomData(random.split(), min, max, noise, volatility, jerkiness, timespan);
+    }
+
     public float getNext() {
-        float tmp;
+        fillNext(one, 0, 1);
+        return one[0];
+    }
 
-        if (--walkDuration <= 0) {
-            walkDuration = 2 + (int) (random.nextFloat() * timespan);
-            tmp = range * (volatility / timespan) * ((random.nextFloat() * 2.0F) - 1.0F + walkBias);
-            walkTrend = (jerkiness * tmp) + ((1 - jerkiness) * walkTrend);
-        }
+    /**
+     * Next len values of the walk into out[off, off + len).
+     */
+    public void fillNext(float[] out, int off, int len) {
+        float value = currValue;
+        float trend = walkTrend;
+        float bias = walkBias;
+        int duration = walkDuration;
+
+        for (int i = off; i < off + len; i++) {
+            long bits;
+            float tmp;
 
-        tmp = (random.nextFloat() - 0.25F) * walkTrend;
-        currValue += tmp;
+            if (--duration <= 0) {
+                bits = random.nextLong();
+                duration = 2 + (int) (SplitRandom.highFloat(bits) * timespan);
+                tmp = range * (volatility / timespan) * ((SplitRandom.lowFloat(bits) * 2.0F) - 1.0F + bias);
+                trend = (jerkiness * tmp) + ((1 - jerkiness) * trend);
+            }
 
-        walkBias = ((mean - currValue) / range) * 0.6F;
+            /* One draw feeds both the step and the noise */
+            bits = random.nextLong();
+            value += (SplitRandom.highFloat(bits) - 0.25F) * trend;
+
+            bias = ((mean - value) / range) * 0.6F;
+
+            tmp = value + (range * noise * (SplitRandom.lowFloat(bits) - 0.5F));
+            out[i] = (tmp > max) ? max : (tmp < min) ? min : tmp;
+        }
 
-        tmp = currValue + (range * noise * (random.nextFloat() - 0.5F));
-        return (tmp > max) ? max : (tmp < min) ? min : tmp;
+        currValue = value;
+        walkTrend = trend;
+        walkBias = bias;
+        walkDuration = duration;
     }
 
 }
@@ -0,0 +1,100 @@
+package com.gopro.graphtest;
+
+import java.util.Arrays;
+
+/**
+ * Off-screen ARGB image with just enough drawing to render chart frames on
+ * a plain JVM: clear and anti-aliased thick lines. Coordinates follow
+ * DataView's: x to the right, y up from the bottom row.
+ */
+final class Raster {
+
+    private final int width, height;
+    private final int[] pixels;
+
+    Raster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Rows top to bottom, ARGB.
+     */
+    int[] getPixels() {
+        return pixels;
+    }
+
+    void clear(int color) {
+        Arrays.fill(pixels, color);
+    }
+
+    /**
+     * Same as Canvas.drawLines: count floats from pts[off] as x0, y0, x1, y1
+     * segments, shifted right by dx, with round caps.
+     */
+    void drawLines(float[] pts, int off, int count, float dx, int color, float strokeWidth) {
+        float r = strokeWidth * 0.5F;
+        for (int j = off; j + 3 < off + count; j += 4) {
+            drawSegment(pts[j] + dx, height - pts[j + 1], pts[j + 2] + dx, height - pts[j + 3],
+                    r, color);
+        }
+    }
+
+    /**
+     * Polyline through count x, y vertices from pts[0], with round joins.
+     */
+    void drawStrip(float[] pts, int count, int color, float strokeWidth) {
+        float r = strokeWidth * 0.5F;
+        for (int j = 0; j + 3 < count << 1; j += 2) {
+            drawSegment(pts[j], height - pts[j + 1], pts[j + 2], height - pts[j + 3], r, color);
+        }
+    }
+
+    /* Coverage falls off over the pixel at distance r from the segment */
+    private void drawSegment(float x0, float y0, float x1, float y1, float r, int color) {
+        int left = Math.max(0, (int) Math.floor(Math.min(x0, x1) - r - 1));
+        int right = Math.min(width - 1, (int) Math.ceil(Math.max(x0, x1) + r + 1));
+        int top = Math.max(0, (int) Math.floor(Math.min(y0, y1) - r - 1));
+        int bottom = Math.min(height - 1, (int) Math.ceil(Math.max(y0, y1) + r + 1));
+        if (left > right || top > bottom) return;
+
+        float ex = x1 - x0, ey = y1 - y0;
+        float len2 = ex * ex + ey * ey;
+        for (int py = top; py <= bottom; py++) {
+            float cy = py + 0.5F;
+            int row = py * width;
+            for (int px = left; px <= right; px++) {
+                float cx = px + 0.5F;
+                float t = (len2 > 0) ? ((cx - x0) * ex + (cy - y0) * ey) / len2 : 0;
+                t = (t < 0) ? 0 : (t > 1) ? 1 : t;
+                float ddx = cx - (x0 + t * ex), ddy = cy - (y0 + t * ey);
+                float cover = r + 0.5F - (float) Math.sqrt(ddx * ddx + ddy * ddy);
+                if (cover <= 0) continue;
+                blend(row + px, color, (cover > 1) ? 1 : cover);
+            }
+        }
+    }
+
+    private void blend(int i, int color, float cover) {
+        float a = ((color >>> 24) / 255F) * cover;
+        int dst = pixels[i];
+        int r = mix((dst >> 16) & 0xFF, (color >> 16) & 0xFF, a);
+        int g = mix((dst >> 8) & 0xFF, (color >> 8) & 0xFF, a);
+        int b = mix(dst & 0xFF, color & 0xFF, a);
+        pixels[i] = (dst & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int mix(int dst, int src, float a) {
+        return (int) (dst + (src - dst) * a + 0.5F);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.gopro.graphtest;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses any number of render requests into at most one render per
+ * display frame. {@link #request()} may be called from any thread; the
+ * callback runs on the UI thread on the next vsync, and is held back while
+ * the previous render is still running.
+ * <p>
+ * Must be created on the UI thread.
+ */
+final class RenderScheduler implements Choreographer.FrameCallback {
+
+    interface Callback {
+        /**
+         * Called on the UI thread; must end with {@link #renderDone()} once
+         * the render it starts has finished.
+         */
+        void onRenderFrame();
+    }
+
+    private final Choreographer choreographer;
+    private final Callback callback;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean posted = new AtomicBoolean();
+    private volatile boolean rendering;
+    private volatile boolean stopped;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    RenderScheduler(Callback callback) {
+        this.callback = callback;
+        choreographer = Choreographer.getInstance();
+    }
+
+    void request() {
+        if (stopped) return;
+        requestCount.incrementAndGet();
+        pending.incrementAndGet();
+        if (posted.compareAndSet(false, true)) choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        posted.set(false);
+        if (stopped) return;
+
+        if (rendering) {
+            /* Renderer still busy with the last frame, try again on the next vsync */
+            droppedCount.incrementAndGet();
+            if (posted.compareAndSet(false, true)) choreographer.postFrameCallback(this);
+            return;
+        }
+
+        int n = pending.getAndSet(0);
+        if (n == 0) return;
+        mergedCount.addAndGet(n - 1);
+        frameCount.incrementAndGet();
+        rendering = true;
+        callback.onRenderFrame();
+    }
+
+    /**
+     * Called from the render thread when the render started by the callback is done.
+     */
+    void renderDone() {
+        rendering = false;
+    }
+
+    /**
+     * Drops the pending frame and ignores requests from now on, so nothing is
+     * started once the renderer's threads are shut down.
+     */
+    void cancel() {
+        stopped = true;
+        choreographer.removeFrameCallback(this);
+        posted.set(false);
+    }
+
+    /**
+     * Number of times {@link #request()} was called.
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Number of renders actually started.
+     */
+    long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * Requests folded into a render started for an earlier request.
+     */
+    long getMergedCount() {
+        return mergedCount.get();
+    }
+
+    /**
+     * Display frames skipped because the previous render had not finished.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+}
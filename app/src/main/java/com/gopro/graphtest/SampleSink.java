@@ -0,0 +1,16 @@
+package com.gopro.graphtest;
+
+/**
+ * Anything a producer can hand batches of timestamped samples to, such as
+ * {@link ChartView} or a {@link CaptureWriter}.
+ */
+public interface SampleSink {
+
+    /**
+     * Takes count samples, times[offset + i] being the timestamp of sample i
+     * and block[col][offset + i] its value in column col. The arrays may be
+     * reused once this returns.
+     */
+    void appendSamples(long[] times, float[][] block, int offset, int count);
+
+}
@@ -0,0 +1,57 @@
+package com.gopro.graphtest;
+
+/**
+ * Read side of a sample history, as the chart sees it: float columns and
+ * optional timestamps addressed by a logical index that only ever grows.
+ * Any thread may read; values are valid from {@link #getFirst()} up to
+ * {@link #getCount()}, and {@link #isIntact(long)} tells a reader whether
+ * what it just read was overwritten under it.
+ */
+public interface SampleSource {
+
+    boolean hasTimes();
+
+    int getNumColumns();
+
+    /**
+     * Most samples held at once; older ones are overwritten.
+     */
+    int getCapacity();
+
+    /**
+     * Logical index one past the newest published sample.
+     */
+    long getCount();
+
+    /**
+     * Logical index of the oldest sample still held.
+     */
+    long getFirst();
+
+    float get(int column, long idx);
+
+    long getTime(long idx);
+
+    /**
+     * Index of the first held sample stamped at or after time, or getCount()
+     * if there is none. The search starts from hint, normally the result of
+     * the previous call.
+     */
+    long search(long time, long hint);
+
+    /**
+     * True if the samples from {@code from} on have not been overwritten.
+     * Implementations fence the caller's earlier reads before the check, as
+     * {@link SampleStore#isIntact(long)} describes; values that pass may
+     * still only be used for display.
+     */
+    boolean isIntact(long from);
+
+    /**
+     * Hint that samples [from, to) are about to be read, so a source that
+     * pages them in from storage can do it ahead of time. May block for as
+     * long as that takes.
+     */
+    void prefetch(long from, long to);
+
+}
@@ -0,0 +1,238 @@
+package com.gopro.graphtest;
+
+/**
+ * Fixed-memory ring buffer holding one float column per series.
+ * <p>
+ * Samples are addressed by a logical index that only ever grows. One producer
+ * thread appends; it writes the values first and then publishes them by
+ * bumping the volatile count, so readers never need a lock. Once more than
+ * {@link #getCapacity()} samples have been appended the oldest ones are
+ * overwritten; readers use {@link #getFirst()} and {@link #isIntact(long)} to
+ * stay inside the live part of the ring. Before it writes, the producer
+ * reserves the indices it is about to fill in a second volatile, so a batch
+ * still being copied in already counts against the oldest samples.
+ * <p>
+ * A store can also keep a timestamp per sample, for sources that jitter, drop
+ * samples or run at their own rate. Timestamps must never decrease; their
+ * unit is up to the caller.
+ */
+public final class SampleStore implements WritableSampleSource {
+
+    private final float[][] data;
+    private final long[] times;
+    private final int capacity;
+    private final int mask;
+    private volatile long count;
+    /* One past the last index the producer may be writing; never below count */
+    private volatile long reserved;
+    /* Written by isIntact only, to fence the caller's reads off from the check */
+    private volatile int readFence;
+
+    public SampleStore(int numColumns, int minCapacity) {
+        this(numColumns, minCapacity, false);
+    }
+
+    public SampleStore(int numColumns, int minCapacity, boolean timestamped) {
+        int cap = 1;
+        while (cap < minCapacity) cap <<= 1;
+        capacity = cap;
+        mask = cap - 1;
+        data = new float[numColumns][cap];
+        times = timestamped ? new long[cap] : null;
+    }
+
+    public boolean hasTimes() {
+        return times != null;
+    }
+
+    public int getNumColumns() {
+        return data.length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Logical index one past the newest published sample.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Logical index of the oldest sample still held.
+     */
+    public long getFirst() {
+        long c = count;
+        return (c > capacity) ? c - capacity : 0;
+    }
+
+    /**
+     * Appends one sample per column. Producer thread only.
+     */
+    public void append(float[] sample) {
+        long c = count;
+        reserve(c + 1);
+        int slot = (int) c & mask;
+        for (int col = 0; col < data.length; col++) {
+            data[col][slot] = sample[col];
+        }
+        count = c + 1;
+    }
+
+    /**
+     * Appends one timestamped sample. Producer thread only.
+     */
+    public void append(long time, float[] sample) {
+        reserve(count + 1);
+        times[(int) count & mask] = time;
+        append(sample);
+    }
+
+    /**
+     * Appends count timestamped samples and publishes them all at once.
+     * Producer thread only.
+     */
+    public void append(long[] times, float[][] block, int offset, int count) {
+        writeTimes(times, offset, count);
+        append(block, offset, count);
+    }
+
+    /**
+     * Appends count samples, block[col][offset + i] being column col of
+     * sample i, and publishes them all at once. Producer thread only.
+     */
+    public void append(float[][] block, int offset, int count) {
+        for (int col = 0; col < data.length; col++) {
+            write(col, block[col], offset, count);
+        }
+        publish(this.count + count);
+    }
+
+    /**
+     * Writes count values of one column after the newest published sample,
+     * without publishing them. Producer thread only; follow with
+     * {@link #publish(long)}.
+     */
+    public void write(int column, float[] src, int offset, int count) {
+        copyIn(src, offset, data[column], count);
+    }
+
+    /**
+     * Same as {@link #write} for the timestamps.
+     */
+    public void writeTimes(long[] src, int offset, int count) {
+        copyIn(src, offset, times, count);
+    }
+
+    /* Only the newest capacity values can survive */
+    private void copyIn(Object src, int offset, Object dst, int count) {
+        reserve(this.count + count);
+        int skip = (count > capacity) ? count - capacity : 0;
+        long c = this.count + skip;
+        int slot = (int) c & mask;
+        int len = count - skip;
+        int first = (len < capacity - slot) ? len : capacity - slot;
+        System.arraycopy(src, offset + skip, dst, slot, first);
+        System.arraycopy(src, offset + skip + first, dst, 0, len - first);
+    }
+
+    /**
+     * Makes the samples written up to logical index newCount visible to
+     * readers. Publishing the same index again is a no-op. Producer thread only.
+     */
+    public void publish(long newCount) {
+        reserve(newCount);
+        if (newCount > count) count = newCount;
+    }
+
+    private void reserve(long end) {
+        if (end > reserved) reserved = end;
+    }
+
+    public float get(int column, long idx) {
+        return data[column][(int) idx & mask];
+    }
+
+    public long getTime(long idx) {
+        return times[(int) idx & mask];
+    }
+
+    /**
+     * Index of the first held sample stamped at or after time, or getCount()
+     * if there is none. The search gallops out from hint, normally the result
+     * of the previous call, so a window that moved a little costs a few
+     * probes rather than a full binary search.
+     */
+    public long search(long time, long hint) {
+        return search(this, time, hint);
+    }
+
+    /**
+     * True if the samples from {@code from} on have not been overwritten,
+     * nor are being overwritten by samples written but not yet published.
+     * Call it after reading, so a write that started meanwhile is seen.
+     * <p>
+     * A volatile read alone would let the caller's plain reads drift past
+     * it, so the check first writes a volatile: earlier loads cannot move
+     * below that write, and the write cannot move below the read of
+     * reserved. What remains is the formal race on the values themselves, so
+     * a torn read may still pass: readers only draw the values, and turn
+     * timestamps into indices through {@link #search}, which stays inside
+     * the held range, so at worst one frame is drawn wrong.
+     */
+    public boolean isIntact(long from) {
+        readFence = 0;
+        return from >= reserved - capacity;
+    }
+
+    /**
+     * Nothing to do, the samples are on the heap.
+     */
+    public void prefetch(long from, long to) {
+    }
+
+    /**
+     * {@link SampleSource#search} over the timestamps of any source.
+     */
+    static long search(SampleSource src, long time, long hint) {
+        long lo = src.getFirst();
+        long hi = src.getCount();
+        /* Everything below lo is earlier than time, everything from hi on is not */
+        if (hint < lo) hint = lo;
+        if (hint > hi) hint = hi;
+
+        if (hint < hi && src.getTime(hint) < time) {
+            lo = hint + 1;
+            for (long step = 1; hint + step < hi; step <<= 1) {
+                long p = hint + step;
+                if (src.getTime(p) >= time) {
+                    hi = p;
+                    break;
+                }
+                lo = p + 1;
+            }
+        } else {
+            hi = hint;
+            for (long step = 1; hint - step >= lo; step <<= 1) {
+                long p = hint - step;
+                if (src.getTime(p) < time) {
+                    lo = p + 1;
+                    break;
+                }
+                hi = p;
+            }
+        }
+
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (src.getTime(mid) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+}
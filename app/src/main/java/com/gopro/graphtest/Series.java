@@ -0,0 +1,89 @@
+package com.gopro.graphtest;
+
+/**
+ * State of one trace shared by {@link ChartView}, {@link DataView} and the
+ * render workers. Written on the UI thread, read by the renderers.
+ * <p>
+ * What the renderers need from the UI thread, the source and the y range,
+ * is published as immutable snapshots through volatile fields, so a worker
+ * never sees a store with another store's column or a half-updated range.
+ * A reader takes each snapshot once and works from that.
+ */
+final class Series {
+
+    /**
+     * Where the samples of a trace come from.
+     */
+    static final class Source {
+        final SampleSource store;
+        final int column;
+        final LodPyramid lod;
+
+        Source(SampleSource store, int column) {
+            this.store = store;
+            this.column = column;
+            lod = new LodPyramid(store, column);
+        }
+    }
+
+    /**
+     * Y range as the renderers see it.
+     */
+    static final class YScale {
+        final float min, max, range;
+
+        YScale(float min, float max) {
+            this.min = min;
+            this.max = max;
+            range = max - min;
+        }
+    }
+
+    final int index;
+
+    /* Null until a source is set */
+    volatile Source source;
+    volatile YScale scale = new YScale(0F, 0F);
+
+    String label = "";
+    float labelWidth;
+    int color = 0xFF000000;
+
+    /* UI thread's copy of the y range; change it through setYMinMax */
+    float yMin, yMax, yRange;
+    float yAbsMin, yAbsMax;
+
+    /* Timestamped stores: last window read by the render pass, and the
+       search hint for the live readout on the UI thread */
+    long winFrom, winTo;
+    long readHint;
+
+    /* Auto-range: the animation state lives on the UI thread while the mode
+       is on; the render thread only checks it is set and tracks the window */
+    volatile AutoRange autoRange;
+    WindowRange range;
+
+    Series(int index) {
+        this.index = index;
+    }
+
+    void setSource(SampleSource store, int column) {
+        source = new Source(store, column);
+    }
+
+    /**
+     * The store, or null if there is none yet.
+     */
+    SampleSource store() {
+        Source src = source;
+        return (src != null) ? src.store : null;
+    }
+
+    void setYMinMax(float yMin, float yMax) {
+        this.yMin = yMin;
+        this.yMax = yMax;
+        yRange = yMax - yMin;
+        scale = new YScale(yMin, yMax);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.gopro.graphtest;
+
+import java.util.BitSet;
+
+/**
+ * Growable set of series plus the bitset of enabled ones.
+ * <p>
+ * Changes happen on the UI thread and are copy-on-write, so render threads
+ * can take a snapshot with {@link #getAll()} and {@link #getEnabled()} and
+ * use it for a whole pass without locking.
+ */
+final class SeriesRegistry {
+
+    private volatile Series[] series = new Series[0];
+    private volatile BitSet enabled = new BitSet();
+
+    /**
+     * Series at index, creating it and any below it as needed.
+     */
+    Series obtain(int index) {
+        Series[] curr = series;
+        if (index < curr.length) return curr[index];
+
+        Series[] grown = new Series[index + 1];
+        System.arraycopy(curr, 0, grown, 0, curr.length);
+        for (int i = curr.length; i < grown.length; i++) grown[i] = new Series(i);
+        series = grown;
+        return grown[index];
+    }
+
+    /**
+     * Series at index, or null if it was never set up.
+     */
+    Series get(int index) {
+        Series[] curr = series;
+        return (index >= 0 && index < curr.length) ? curr[index] : null;
+    }
+
+    int size() {
+        return series.length;
+    }
+
+    /**
+     * Snapshot of all series; must not be modified.
+     */
+    Series[] getAll() {
+        return series;
+    }
+
+    void setEnabled(int index, boolean enable) {
+        obtain(index);
+        BitSet next = (BitSet) enabled.clone();
+        next.set(index, enable);
+        enabled = next;
+    }
+
+    boolean isEnabled(int index) {
+        return enabled.get(index);
+    }
+
+    /**
+     * Snapshot of the enabled series; must not be modified.
+     */
+    BitSet getEnabled() {
+        return enabled;
+    }
+
+}
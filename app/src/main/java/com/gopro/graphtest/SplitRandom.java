@@ -0,0 +1,78 @@
+package com.gopro.graphtest;
+
+/**
+ * SplitMix64 generator, the algorithm behind java.util.SplittableRandom,
+ * which needs API 24. Every instance is an independent, reproducible stream
+ * for one thread; {@link #split()} derives a new one without any shared
+ * state, so streams can be handed out by the thousands.
+ */
+final class SplitRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final float FLOAT_UNIT = 1F / (1 << 24);
+
+    private long seed;
+    private final long gamma;
+
+    SplitRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * New stream seeded from this one. Advances this stream by two values.
+     */
+    SplitRandom split() {
+        return new SplitRandom(mix64(nextSeed()), mixGamma(nextSeed()));
+    }
+
+    long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Uniform in [0, 1).
+     */
+    float nextFloat() {
+        return (nextLong() >>> 40) * FLOAT_UNIT;
+    }
+
+    /**
+     * Float uniform in [0, 1) from the high 24 bits of a value of
+     * {@link #nextLong()}, so one draw can feed two floats.
+     */
+    static float highFloat(long bits) {
+        return (bits >>> 40) * FLOAT_UNIT;
+    }
+
+    /**
+     * Same as {@link #highFloat} for the low 24 bits.
+     */
+    static float lowFloat(long bits) {
+        return ((int) bits & 0xFFFFFF) * FLOAT_UNIT;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /* Odd gamma with enough bit transitions, as in SplittableRandom */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+
+}
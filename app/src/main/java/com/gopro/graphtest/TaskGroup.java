@@ -0,0 +1,64 @@
+package com.gopro.graphtest;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fork/join for a fixed set of tasks: runs the first task on the calling
+ * thread and the rest on the executor, then waits for all of them.
+ * Reusable, and allocates nothing per call.
+ */
+final class TaskGroup {
+
+    private final Executor executor;
+    private final Runnable[] slots;
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile Runnable[] tasks;
+    private volatile Thread waiter;
+    private volatile Throwable failure;
+
+    TaskGroup(Executor executor, int maxTasks) {
+        this.executor = executor;
+        slots = new Runnable[maxTasks];
+        for (int i = 0; i < maxTasks; i++) {
+            final int slot = i;
+            slots[i] = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        tasks[slot].run();
+                    } catch (Throwable t) {
+                        failure = t;
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) LockSupport.unpark(waiter);
+                    }
+                }
+            };
+        }
+    }
+
+    int getMaxTasks() {
+        return slots.length;
+    }
+
+    /**
+     * Runs tasks[0, count) and returns once all have finished. Rethrows the
+     * failure of any of them.
+     */
+    void invokeAll(Runnable[] tasks, int count) {
+        if (count <= 0) return;
+        this.tasks = tasks;
+        failure = null;
+        waiter = Thread.currentThread();
+        remaining.set(count);
+
+        for (int i = 1; i < count; i++) executor.execute(slots[i]);
+        slots[0].run();
+        while (remaining.get() > 0) LockSupport.park(this);
+
+        Throwable t = failure;
+        if (t != null) throw new RuntimeException(t);
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.gopro.graphtest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decimated slices of series history, kept so that panning back over a
+ * region copies its vertices instead of reducing its samples again.
+ * <p>
+ * A tile is {@link #TILE_COLUMNS} M4 columns of 2^level samples each,
+ * aligned to absolute sample indices, of one column of one source. It holds
+ * sample offsets and raw values, not pixels, so a new y scale does not need
+ * new tiles. Tiles are evicted least recently used once their arrays take
+ * more than the byte budget.
+ * <p>
+ * The render tasks of a pass share one cache. The lock is only held for
+ * the map lookup or insert; building a tile, and checking that a cached one
+ * is still good, happen outside it. Lookups take a {@link Key} the caller
+ * owns and reuses, so a hit allocates nothing.
+ */
+final class TileCache {
+
+    static final int TILE_COLUMNS = 64;
+
+    /* Arrays plus a rough allowance for the objects and map entry */
+    private static final int TILE_OVERHEAD = 128;
+
+    /**
+     * Vertices of one tile, column c's being [starts[c], starts[c + 1]).
+     */
+    static final class Tile {
+        final float[] x, y;
+        final int[] starts;
+        /* One past the last sample read; short of the tile's span at the live end */
+        final long end;
+
+        Tile(float[] x, float[] y, int[] starts, long end) {
+            this.x = x;
+            this.y = y;
+            this.starts = starts;
+            this.end = end;
+        }
+
+        int bytes() {
+            return (x.length + y.length + starts.length) * 4 + TILE_OVERHEAD;
+        }
+    }
+
+    /**
+     * Tile index at level of one column of a source. Mutable so that a
+     * caller can keep one for its lookups; the cache keeps its own copies.
+     */
+    static final class Key {
+        SampleSource store;
+        int column, level;
+        long index;
+
+        Key set(SampleSource store, int column, int level, long index) {
+            this.store = store;
+            this.column = column;
+            this.level = level;
+            this.index = index;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return k.store == store && k.column == column && k.level == level && k.index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(store);
+            h = 31 * h + column;
+            h = 31 * h + level;
+            return 31 * h + (int) (index ^ (index >>> 32));
+        }
+    }
+
+    private final LinkedHashMap<Key, Tile> tiles = new LinkedHashMap<Key, Tile>(64, 0.75F, true);
+    private long maxBytes, bytes;
+
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets the byte budget, evicting down to it; 0 turns the cache off.
+     */
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    synchronized boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * The tile, or null if it is not cached or was cut short at a live end
+     * other than end.
+     */
+    Tile get(Key key, long end) {
+        Tile tile;
+        synchronized (this) {
+            tile = tiles.get(key);
+        }
+        if (tile == null) return null;
+        long span = (long) TILE_COLUMNS << key.level;
+        if (tile.end < (key.index + 1) * span && tile.end != end) return null;
+        return tile;
+    }
+
+    void put(Key key, Tile tile) {
+        Key copy = new Key().set(key.store, key.column, key.level, key.index);
+        synchronized (this) {
+            if (tile.bytes() > maxBytes) return;
+            Tile old = tiles.put(copy, tile);
+            if (old != null) bytes -= old.bytes();
+            bytes += tile.bytes();
+            trim();
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key, Tile>> it = tiles.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes();
+            it.remove();
+        }
+    }
+
+}
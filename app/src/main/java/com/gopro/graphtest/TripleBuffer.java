@@ -0,0 +1,53 @@
+package com.gopro.graphtest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of frames from one producer thread to one consumer
+ * thread. The producer owns the back buffer and the consumer the front
+ * buffer; {@link #publish()} and {@link #getFront()} swap them with the
+ * middle one, so neither side ever waits or copies, and the consumer always
+ * gets the newest complete frame.
+ */
+final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 2;
+    private int front = 0;
+
+    TripleBuffer(T a, T b, T c) {
+        buffers = new Object[]{a, b, c};
+    }
+
+    /**
+     * Producer side: buffer to fill next.
+     */
+    @SuppressWarnings("unchecked")
+    T getBack() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Producer side: hands the filled back buffer over and takes the middle one.
+     */
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Consumer side: newest published buffer, or the current one if nothing
+     * new was published since the last call.
+     */
+    @SuppressWarnings("unchecked")
+    T getFront() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.gopro.graphtest;
+
+/**
+ * Min and max of a series over the window of the last render pass, for
+ * auto-ranged series.
+ * <p>
+ * While the window only slides forward, as it does when following live
+ * data, two monotonic deques of sample indices give the extremes with every
+ * sample pushed and popped once, so a pass costs only the newly published
+ * samples. Any other move (a pan back, a jump, a window wider than
+ * {@link #MAX_TRACKED}) is answered from the {@link LodPyramid} instead,
+ * and the deques are rebuilt once the window is back near the live end.
+ * NaN and infinite samples are skipped by the deques.
+ * <p>
+ * Render thread only, like the pyramid.
+ */
+final class WindowRange {
+
+    static final int MAX_TRACKED = 1 << 16;
+
+    private final float[] minMax = new float[2];
+    private long[] minIdx = new long[64], maxIdx = new long[64];
+    private float[] minVal = new float[64], maxVal = new float[64];
+    private int minHead, minTail, maxHead, maxTail;
+    private long from, to;
+    private boolean tracking;
+    private float min = Float.NaN, max = Float.NaN;
+
+    /**
+     * Smallest value in the window, NaN if it holds none.
+     */
+    float getMin() {
+        return min;
+    }
+
+    /**
+     * Largest value in the window, NaN if it holds none.
+     */
+    float getMax() {
+        return max;
+    }
+
+    /**
+     * Moves the window to samples [from, to) of src, whose pyramid must have
+     * been brought up to date with LodPyramid.update first.
+     */
+    void update(Series.Source src, long from, long to) {
+        LodPyramid lod = src.lod;
+        long count = lod.getCount();
+        if (to > count) to = count;
+        if (from < 0) from = 0;
+
+        boolean slides = tracking && from >= this.from && to >= this.to && from <= this.to;
+        if (!slides) {
+            /* Panned away from the live end, or too wide to track */
+            if (count - to > to - from || to - from > MAX_TRACKED) {
+                tracking = false;
+                lod.minMax(from, to, minMax);
+                min = minMax[0];
+                max = minMax[1];
+                return;
+            }
+            /* At or near the live end: one scan of the window, then it slides */
+            minHead = minTail = maxHead = maxTail = 0;
+            this.from = this.to = from;
+            tracking = true;
+        }
+
+        /* Expire first, so the deques never hold more than the window */
+        while (minHead != minTail && minIdx[minHead] < from) minHead = (minHead + 1) & (minIdx.length - 1);
+        while (maxHead != maxTail && maxIdx[maxHead] < from) maxHead = (maxHead + 1) & (maxIdx.length - 1);
+        if (to - from >= minIdx.length) grow(to - from + 1);
+        SampleSource store = src.store;
+        for (long i = this.to; i < to; i++) push(i, store.get(src.column, i));
+        this.from = from;
+        this.to = to;
+        min = (minHead != minTail) ? minVal[minHead] : Float.NaN;
+        max = (maxHead != maxTail) ? maxVal[maxHead] : Float.NaN;
+    }
+
+    /* Drops every value the new one makes redundant, then appends it */
+    private void push(long idx, float v) {
+        if (v != v || Float.isInfinite(v)) return;
+        int mask = minIdx.length - 1;
+
+        while (minTail != minHead && minVal[(minTail - 1) & mask] >= v) minTail = (minTail - 1) & mask;
+        minIdx[minTail] = idx;
+        minVal[minTail] = v;
+        minTail = (minTail + 1) & mask;
+
+        while (maxTail != maxHead && maxVal[(maxTail - 1) & mask] <= v) maxTail = (maxTail - 1) & mask;
+        maxIdx[maxTail] = idx;
+        maxVal[maxTail] = v;
+        maxTail = (maxTail + 1) & mask;
+    }
+
+    /* Deques hold at most one entry per sample in the window */
+    private void grow(long needed) {
+        int cap = minIdx.length;
+        while (cap < needed) cap <<= 1;
+        if (cap == minIdx.length) return;
+
+        long[] mnI = new long[cap], mxI = new long[cap];
+        float[] mnV = new float[cap], mxV = new float[cap];
+        int mask = minIdx.length - 1;
+        int n = 0;
+        for (int i = minHead; i != minTail; i = (i + 1) & mask, n++) {
+            mnI[n] = minIdx[i];
+            mnV[n] = minVal[i];
+        }
+        minHead = 0;
+        minTail = n;
+        n = 0;
+        for (int i = maxHead; i != maxTail; i = (i + 1) & mask, n++) {
+            mxI[n] = maxIdx[i];
+            mxV[n] = maxVal[i];
+        }
+        maxHead = 0;
+        maxTail = n;
+        minIdx = mnI;
+        minVal = mnV;
+        maxIdx = mxI;
+        maxVal = mxV;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.gopro.graphtest;
+
+/**
+ * A {@link SampleSource} with a single producer. The producer writes values
+ * past the newest published sample and then publishes them, so readers never
+ * see a half-written sample. All methods here are for the producer thread only.
+ */
+public interface WritableSampleSource extends SampleSource {
+
+    /**
+     * Appends count samples, block[col][offset + i] being column col of
+     * sample i, and publishes them all at once.
+     */
+    void append(float[][] block, int offset, int count);
+
+    /**
+     * Same as {@link #append(float[][], int, int)} for timestamped sources.
+     */
+    void append(long[] times, float[][] block, int offset, int count);
+
+    /**
+     * Writes count values of one column after the newest published sample,
+     * without publishing them.
+     */
+    void write(int column, float[] src, int offset, int count);
+
+    void writeTimes(long[] src, int offset, int count);
+
+    /**
+     * Makes the samples written up to logical index newCount visible to
+     * readers. Publishing the same index again is a no-op.
+     */
+    void publish(long newCount);
+
+}
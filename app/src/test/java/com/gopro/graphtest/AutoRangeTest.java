@@ -0,0 +1,95 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AutoRangeTest {
+
+    private static final long SECOND = 1000 * 1000 * 1000L;
+
+    private final AutoRange auto = new AutoRange();
+    private final Series series = new Series(0);
+
+    public AutoRangeTest() {
+        series.setYMinMax(-1F, 1F);
+    }
+
+    @Test
+    public void niceStep_rounds125() throws Exception {
+        assertEquals(1F, AutoRange.niceStep(0.7F), 0F);
+        assertEquals(2F, AutoRange.niceStep(1.3F), 0F);
+        assertEquals(5F, AutoRange.niceStep(4.9F), 0F);
+        assertEquals(10F, AutoRange.niceStep(5.1F), 0F);
+        assertEquals(0.02F, AutoRange.niceStep(0.015F), 1e-9F);
+        assertEquals(2000F, AutoRange.niceStep(1234F), 0F);
+    }
+
+    @Test
+    public void step_easesToSnappedTarget() throws Exception {
+        assertTrue(auto.step(series, 0F, 10F, 0F, 0));
+        assertTrue(auto.isAnimating());
+        assertEquals(1F, series.yMax, 0F);
+
+        assertTrue(auto.step(series, 0F, 10F, 0F, AutoRange.ANIM_NANOS / 2));
+        assertTrue(series.yMax > 1F && series.yMax < 12F);
+        /* 10 plus 10% headroom either side, out to steps of 2 */
+        assertTrue(auto.step(series, 0F, 10F, 0F, AutoRange.ANIM_NANOS));
+        assertFalse(auto.isAnimating());
+        assertEquals(-2F, series.yMin, 0F);
+        assertEquals(12F, series.yMax, 0F);
+        assertEquals(series.yMin, series.scale.min, 0F);
+        assertEquals(series.yMax, series.scale.max, 0F);
+    }
+
+    @Test
+    public void step_holdsWhileDataFits() throws Exception {
+        auto.step(series, 0F, 10F, 0F, 0);
+        auto.step(series, 0F, 10F, 0F, SECOND);
+        /* Inside the bounds and more than half their span: nothing moves */
+        assertFalse(auto.step(series, 1F, 9F, 0F, 2 * SECOND));
+        assertFalse(auto.step(series, -1.5F, 6F, 0F, 3 * SECOND));
+        assertEquals(-2F, series.yMin, 0F);
+        assertEquals(12F, series.yMax, 0F);
+    }
+
+    @Test
+    public void step_retargetsWhenDataLeavesOrShrinks() throws Exception {
+        auto.step(series, 0F, 10F, 0F, 0);
+        auto.step(series, 0F, 10F, 0F, SECOND);
+
+        assertTrue(auto.step(series, 0F, 13F, 0F, 2 * SECOND));
+        auto.step(series, 0F, 13F, 0F, 3 * SECOND);
+        assertTrue(series.yMax >= 13F);
+
+        assertTrue(auto.step(series, 4F, 5F, 0F, 4 * SECOND));
+        auto.step(series, 4F, 5F, 0F, 5 * SECOND);
+        assertTrue(series.yMin <= 4F && series.yMax >= 5F);
+        assertTrue(series.yMax - series.yMin < 3F);
+    }
+
+    @Test
+    public void step_respectsMinSpanAndAbsoluteBounds() throws Exception {
+        series.yAbsMin = 0F;
+        series.yAbsMax = 100F;
+        auto.step(series, -50F, 5F, 0F, 0);
+        auto.step(series, -50F, 5F, 0F, SECOND);
+        assertEquals(0F, series.yMin, 0F);
+
+        AutoRange flat = new AutoRange();
+        Series s = new Series(1);
+        s.setYMinMax(0F, 1F);
+        flat.step(s, 3F, 3F, 4F, 0);
+        flat.step(s, 3F, 3F, 4F, SECOND);
+        assertTrue(s.yMax - s.yMin >= 4F);
+        assertTrue(s.yMin <= 3F && s.yMax >= 3F);
+    }
+
+    @Test
+    public void step_ignoresEmptyWindow() throws Exception {
+        assertFalse(auto.step(series, Float.NaN, Float.NaN, 0F, 0));
+        assertEquals(-1F, series.yMin, 0F);
+        assertEquals(1F, series.yMax, 0F);
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CaptureRoundTripTest {
+
+    /* Fewer than NUM_BLOCKS blocks, so nothing can be dropped */
+    private static final int COUNT = 2 * CaptureWriter.BLOCK_SAMPLES + 1000;
+    private static final int COLUMNS = 3;
+
+    private final long[] times = new long[COUNT];
+    private final float[][] cols = new float[COLUMNS][COUNT];
+
+    private void fill(long seed) {
+        Random random = new Random(seed);
+        long t = 1000;
+        float v = 0;
+        for (int i = 0; i < COUNT; i++) {
+            /* Mostly steady, with jitter and the odd gap */
+            t += 10 + ((i % 97 == 0) ? 500 : random.nextInt(3) - 1);
+            times[i] = t;
+            v += (float) random.nextGaussian();
+            cols[0][i] = v;
+            cols[1][i] = (float) Math.sin(i * 0.01) * 1e-3F;
+            cols[2][i] = (i % 5 == 0) ? -7.5F : 12.25F;
+        }
+    }
+
+    private byte[] write(int bits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CaptureWriter writer = new CaptureWriter(bytes, COLUMNS, 1000000L, bits);
+        /* Batches that do not line up with the blocks */
+        for (int i = 0; i < COUNT; i += 333) {
+            writer.appendSamples(times, cols, i, Math.min(333, COUNT - i));
+        }
+        writer.close();
+        assertEquals(0, writer.getDropped());
+        assertEquals(bytes.size(), writer.getBytesWritten());
+        return bytes.toByteArray();
+    }
+
+    /* Reads the stream back, checking every value against tolerance(col, i) */
+    private void readBack(byte[] stream, int bits) throws IOException {
+        CaptureReader reader = new CaptureReader(new ByteArrayInputStream(stream));
+        assertEquals(COLUMNS, reader.getNumColumns());
+        assertEquals(1000000L, reader.getTimeUnitNanos());
+
+        int at = 0, n;
+        while ((n = reader.next()) >= 0) {
+            for (int col = 0; col < COLUMNS; col++) {
+                float tolerance = tolerance(col, at, n, bits);
+                for (int i = 0; i < n; i++) {
+                    float expected = cols[col][at + i];
+                    float actual = reader.getColumns()[col][i];
+                    if (bits == 0) {
+                        assertEquals(Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+                    } else {
+                        assertEquals("column " + col + " sample " + (at + i), expected, actual, tolerance);
+                    }
+                }
+            }
+            for (int i = 0; i < n; i++) assertEquals(times[at + i], reader.getTimes()[i]);
+            at += n;
+        }
+        assertEquals(COUNT, at);
+        reader.close();
+    }
+
+    /* Half a quantization step over the samples' block, plus float rounding */
+    private float tolerance(int col, int from, int n, int bits) {
+        if (bits == 0) return 0;
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < from + n; i++) {
+            min = Math.min(min, cols[col][i]);
+            max = Math.max(max, cols[col][i]);
+        }
+        float range = max - min;
+        return range / ((1 << bits) - 1) / 2 + Math.max(Math.abs(min), Math.abs(max)) * 1e-6F;
+    }
+
+    @Test
+    public void roundTrip_exact() throws Exception {
+        fill(1);
+        cols[1][5] = Float.NaN;
+        cols[1][6] = Float.POSITIVE_INFINITY;
+        cols[1][7] = -0F;
+        readBack(write(0), 0);
+    }
+
+    @Test
+    public void roundTrip_16bits() throws Exception {
+        fill(2);
+        readBack(write(16), 16);
+    }
+
+    @Test
+    public void roundTrip_8bits() throws Exception {
+        fill(3);
+        readBack(write(8), 8);
+    }
+
+    @Test
+    public void roundTrip_nonFiniteColumnStaysExact() throws Exception {
+        fill(4);
+        cols[2][10] = Float.NEGATIVE_INFINITY;
+        CaptureReader reader = new CaptureReader(new ByteArrayInputStream(write(8)));
+        assertEquals(CaptureWriter.BLOCK_SAMPLES, reader.next());
+        for (int i = 0; i < CaptureWriter.BLOCK_SAMPLES; i++) {
+            assertEquals(cols[2][i], reader.getColumns()[2][i], 0F);
+        }
+    }
+
+    @Test
+    public void quantizing_shrinksStream() throws Exception {
+        fill(5);
+        int exact = write(0).length;
+        int q16 = write(16).length;
+        int q8 = write(8).length;
+        assertTrue(q16 < exact);
+        assertTrue(q8 < q16);
+    }
+
+    @Test
+    public void replay_deliversEverySample() throws Exception {
+        fill(6);
+        CaptureReader reader = new CaptureReader(new ByteArrayInputStream(write(0)));
+        final long[] got = new long[1];
+        final long[] lastTime = {Long.MIN_VALUE};
+        long total = reader.replay(new SampleSink() {
+            @Override
+            public void appendSamples(long[] t, float[][] block, int offset, int count) {
+                for (int i = offset; i < offset + count; i++) {
+                    assertEquals(times[(int) got[0]], t[i]);
+                    assertEquals(cols[0][(int) got[0]], block[0][i], 0F);
+                    assertTrue(t[i] > lastTime[0]);
+                    lastTime[0] = t[i];
+                    got[0]++;
+                }
+            }
+        }, 0);
+        assertEquals(COUNT, total);
+        assertEquals(COUNT, got[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsOtherStreams() throws Exception {
+        new CaptureReader(new ByteArrayInputStream(new byte[64]));
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DecimatorTest {
+
+    private static final int[] MODES = {Decimator.MODE_STRIDE, Decimator.MODE_M4, Decimator.MODE_LTTB};
+
+    private final SampleStore store = new SampleStore(1, 1 << 18);
+    private final LodPyramid lod;
+
+    public DecimatorTest() {
+        Random random = new Random(1);
+        float[] sample = new float[1];
+        float v = 0;
+        for (int i = 0; i < store.getCapacity(); i++) {
+            v += (float) random.nextGaussian();
+            sample[0] = (random.nextInt(1000) == 0) ? v * 5 : v;
+            store.append(sample);
+        }
+        lod = new LodPyramid(store, 0);
+        lod.update();
+    }
+
+    /* Runs mode over the window, with or without the pyramid, and checks the output shape */
+    private int decimate(int mode, boolean useLod, long from, long to, int buckets, float[] xs, float[] ys) {
+        Decimator d = Decimator.create(mode);
+        int n = useLod ? d.decimate(lod, store, 0, from, to, buckets, xs, ys)
+                : d.decimate(store, 0, from, to, buckets, xs, ys);
+        String at = "mode " + mode + (useLod ? " lod" : " raw") + " window " + from + "-" + to + " b=" + buckets;
+        assertTrue(at, n >= 2);
+        assertTrue(at, n <= Decimator.maxPoints(buckets));
+        assertEquals(at, 0F, xs[0], 0F);
+        assertEquals(at, to - from - 1, xs[n - 1], 0F);
+        assertEquals(at, store.get(0, from), ys[0], 0F);
+        assertEquals(at, store.get(0, to - 1), ys[n - 1], 0F);
+        for (int i = 1; i < n; i++) assertTrue(at + " vertex " + i, xs[i] >= xs[i - 1]);
+        return n;
+    }
+
+    @Test
+    public void everyMode_respectsMaxPointsAndOrder() throws Exception {
+        Random random = new Random(2);
+        for (int mode : MODES) {
+            for (int i = 0; i < 60; i++) {
+                int buckets = 1 + random.nextInt(300);
+                long len = 2 + random.nextInt(200000);
+                long from = random.nextInt((int) (store.getCount() - len));
+                float[] xs = new float[Decimator.maxPoints(buckets)], ys = new float[xs.length];
+                decimate(mode, false, from, from + len, buckets, xs, ys);
+                decimate(mode, true, from, from + len, buckets, xs, ys);
+            }
+        }
+    }
+
+    @Test
+    public void rawM4_keepsWindowExtremesAndSamples() throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            int buckets = 1 + random.nextInt(200);
+            long len = 2 + random.nextInt(20000);
+            long from = random.nextInt((int) (store.getCount() - len));
+            float[] xs = new float[Decimator.maxPoints(buckets)], ys = new float[xs.length];
+            int n = decimate(Decimator.MODE_M4, false, from, from + len, buckets, xs, ys);
+
+            float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+            for (long k = from; k < from + len; k++) {
+                lo = Math.min(lo, store.get(0, k));
+                hi = Math.max(hi, store.get(0, k));
+            }
+            float outLo = Float.POSITIVE_INFINITY, outHi = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < n; k++) {
+                /* Every vertex is a sample at its own offset */
+                assertEquals(store.get(0, from + (long) xs[k]), ys[k], 0F);
+                outLo = Math.min(outLo, ys[k]);
+                outHi = Math.max(outHi, ys[k]);
+            }
+            assertEquals(lo, outLo, 0F);
+            assertEquals(hi, outHi, 0F);
+        }
+    }
+
+    @Test
+    public void m4_shortWindowKeepsEverySample() throws Exception {
+        float[] xs = new float[Decimator.maxPoints(100)], ys = new float[xs.length];
+        int n = decimate(Decimator.MODE_M4, false, 1000, 1050, 100, xs, ys);
+        assertEquals(50, n);
+        for (int k = 0; k < n; k++) assertEquals(k, xs[k], 0F);
+    }
+
+    @Test
+    public void lttb_keepsOneVertexPerBucket() throws Exception {
+        int buckets = 100;
+        float[] xs = new float[Decimator.maxPoints(buckets)], ys = new float[xs.length];
+        /* Raw samples, and a window long enough to go through M4 first */
+        for (long len : new long[]{300, 1000000 / 4, store.getCapacity()}) {
+            int n = decimate(Decimator.MODE_LTTB, false, 0, len, buckets, xs, ys);
+            assertTrue("len " + len, n <= buckets + 2);
+            for (int k = 1; k < n; k++) assertTrue(xs[k] > xs[k - 1]);
+        }
+    }
+
+    @Test
+    public void tooShortOrNoBuckets_givesNothing() throws Exception {
+        float[] xs = new float[Decimator.maxPoints(10)], ys = new float[xs.length];
+        for (int mode : MODES) {
+            Decimator d = Decimator.create(mode);
+            assertEquals(0, d.decimate(store, 0, 5, 6, 10, xs, ys));
+            assertEquals(0, d.decimate(store, 0, 5, 500, 0, xs, ys));
+        }
+    }
+
+}
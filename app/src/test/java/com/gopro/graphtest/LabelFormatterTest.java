@@ -0,0 +1,105 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LabelFormatterTest {
+
+    private final char[] buf = new char[LabelFormatter.MAX_LENGTH];
+
+    private String format(LabelFormatter f, double value) {
+        return new String(buf, 0, f.format(value, buf, 0));
+    }
+
+    private static DecimalFormat decimalFormat(String pattern) {
+        DecimalFormat df = new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(Locale.US));
+        df.setRoundingMode(RoundingMode.HALF_EVEN);
+        return df;
+    }
+
+    @Test
+    public void format_matchesDecimalFormat() throws Exception {
+        LabelFormatter one = new LabelFormatter(1);
+        LabelFormatter two = new LabelFormatter(2);
+        DecimalFormat df1 = decimalFormat("0.0E0");
+        DecimalFormat df2 = decimalFormat("0.00E0");
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            /* Floats, as the chart's values are */
+            double v = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(21) - 10));
+            assertEquals(String.valueOf(v), df1.format(v), format(one, v));
+            assertEquals(String.valueOf(v), df2.format(v), format(two, v));
+        }
+    }
+
+    @Test
+    public void format_roundsExactTiesHalfEven() throws Exception {
+        LabelFormatter one = new LabelFormatter(1);
+        assertEquals("1.2E0", format(one, 1.25));
+        assertEquals("1.4E0", format(one, 1.35F));
+        assertEquals("1.2E-1", format(one, 0.125));
+        assertEquals("1.2E3", format(one, 1250));
+        assertEquals("1.4E3", format(one, 1350));
+        assertEquals("-2.2E2", format(one, -225));
+        assertEquals("9.8E0", format(one, 9.75));
+
+        LabelFormatter two = new LabelFormatter(2);
+        assertEquals("1.12E0", format(two, 1.125));
+        assertEquals("1.38E0", format(two, 1.375));
+        assertEquals("2.50E-1", format(two, 0.25));
+    }
+
+    @Test
+    public void format_roundsNearTiesByExactValue() throws Exception {
+        /* None of these is a tie as a double, though scaling it by ten can make one */
+        LabelFormatter one = new LabelFormatter(1);
+        DecimalFormat df1 = decimalFormat("0.0E0");
+        double[] values = {0.15, 0.45, 1.45, 2.55, 0.0125, 1.05E-5, 3.35E7};
+        for (double v : values) {
+            assertEquals(String.valueOf(v), df1.format(v), format(one, v));
+        }
+    }
+
+    @Test
+    public void format_specialValues() throws Exception {
+        LabelFormatter one = new LabelFormatter(1);
+        assertEquals("0.0E0", format(one, 0));
+        assertEquals("NaN", format(one, Double.NaN));
+        assertEquals("\u221E", format(one, Double.POSITIVE_INFINITY));
+        assertEquals("-\u221E", format(one, Double.NEGATIVE_INFINITY));
+        assertEquals("1.0E1", format(one, 9.99));
+        assertEquals("-3.4E38", format(one, -Float.MAX_VALUE));
+    }
+
+    @Test
+    public void format_fitsMaxLength() throws Exception {
+        LabelFormatter two = new LabelFormatter(2);
+        assertTrue(format(two, -1.5E-100).length() <= LabelFormatter.MAX_LENGTH);
+    }
+
+    @Test
+    public void format_writesAtOffset() throws Exception {
+        char[] out = new char[4 + LabelFormatter.MAX_LENGTH];
+        int end = new LabelFormatter(1).format(-2.5, out, 4);
+        assertEquals("-2.5E0", new String(out, 4, end - 4));
+    }
+
+    @Test
+    public void measure_sumsAdvances() throws Exception {
+        float[] advances = new float[128];
+        advances['0'] = 2F;
+        advances['-'] = 1F;
+        advances['E'] = 3F;
+        char[] chars = {'-', '0', 'E', '\u221E'};
+        assertEquals(8F, LabelFormatter.measure(chars, 0, 4, advances), 0F);
+        assertEquals(5F, LabelFormatter.measure(chars, 1, 3, advances), 0F);
+    }
+
+}
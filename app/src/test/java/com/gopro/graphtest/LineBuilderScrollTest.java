@@ -0,0 +1,91 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineBuilderScrollTest {
+
+    private static final int WIDTH = 800, HEIGHT = 300, RANGE = 200;
+
+    private final float[] xPts = new float[LineBuilder.MAX_HORZ_POINTS + 1];
+    private final LineBuilder builder = new LineBuilder();
+    private final Series series = new Series(0);
+    private final PointFrame ring = new PointFrame();
+    private final PointFrame full = new PointFrame();
+
+    public LineBuilderScrollTest() {
+        Random random = new Random(1);
+        SampleStore store = new SampleStore(1, 4096);
+        float[] sample = new float[1];
+        for (int i = 0; i < 4000; i++) {
+            sample[0] = (float) random.nextGaussian();
+            store.append(sample);
+        }
+        series.setSource(store, 0);
+        series.setYMinMax(-3F, 3F);
+        LineBuilder.calcXPts(xPts, RANGE, WIDTH);
+        builder.setDecimation(Decimator.MODE_M4);
+        builder.setLineMode(LineBuilder.MODE_SEGMENTS);
+        ring.ensureLines(1);
+        full.ensureLines(1);
+    }
+
+    /* Builds ring by reuse and full from scratch, then compares what a view would draw */
+    private void step(long xOffs, long xSize, long shift) {
+        builder.setViewport(xPts, WIDTH, HEIGHT, xOffs, RANGE, xSize, false);
+        builder.build(ring, series, shift);
+        builder.build(full, series, -1);
+        assertEquals(0, full.heads[0]);
+
+        String at = "xOffs " + xOffs + " xSize " + xSize + " shift " + shift;
+        int segs = full.lineSegs[0];
+        assertEquals(at, segs, ring.lineSegs[0]);
+        int head = ring.heads[0];
+        assertTrue(at, head >= 0 && (head < segs || head == 0));
+        float dx = xPts[1] - xPts[0];
+        for (int k = 0; k < segs; k++) {
+            /* Segment k of the window sits in slot head + k, translated by the view */
+            int slot = (head + k) % segs;
+            float tx = (k - slot) * dx;
+            for (int f = 0; f < 4; f++) {
+                float expected = full.points[0][(k << 2) + f];
+                float actual = ring.points[0][(slot << 2) + f];
+                if ((f & 1) == 0) actual += tx;
+                assertEquals(at + " seg " + k, expected, actual, (f & 1) == 0 ? 0.01F : 0F);
+            }
+        }
+    }
+
+    @Test
+    public void append_matchesFullRebuild() throws Exception {
+        /* The window fills up while xOffs stays put */
+        for (long xSize = 1; xSize <= RANGE + 20; xSize += 7) step(0, xSize, 0);
+    }
+
+    @Test
+    public void scroll_matchesFullRebuild() throws Exception {
+        Random random = new Random(2);
+        step(0, RANGE, -1);
+        long xOffs = 0;
+        for (int i = 0; i < 300; i++) {
+            long shift = 1 + random.nextInt(30);
+            xOffs += shift;
+            step(xOffs, xOffs + RANGE, shift);
+        }
+    }
+
+    @Test
+    public void scroll_fallsBackOnJumps() throws Exception {
+        step(0, RANGE, -1);
+        step(5, 5 + RANGE, 5);
+        /* As far as a whole window, and back again */
+        step(5 + RANGE, 5 + 2 * RANGE, RANGE);
+        step(100, 100 + RANGE, -1);
+        step(100, 100 + RANGE, 0);
+        step(103, 103 + RANGE, 3);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LodPyramidTest {
+
+    private static final int CAPACITY = 1 << 15;
+
+    private static SampleStore store(long seed, int count) {
+        Random random = new Random(seed);
+        SampleStore store = new SampleStore(1, CAPACITY);
+        float[] sample = new float[1];
+        float v = 0;
+        for (int i = 0; i < count; i++) {
+            v += (float) random.nextGaussian() * 0.05F;
+            /* Lone spikes, so a bucket reaching past the window edge shows */
+            sample[0] = (random.nextInt(500) == 0) ? v + 3 * (float) random.nextGaussian() : v;
+            store.append(sample);
+        }
+        return store;
+    }
+
+    /*
+     * Every bucket of four vertices spans the samples from its first to its
+     * last vertex; its values must be exactly their first, min, max and last.
+     */
+    private static void checkAgainstSamples(SampleStore store, LodPyramid lod, long from, long to, int buckets) {
+        float[] xs = new float[Decimator.maxPoints(buckets)];
+        float[] ys = new float[xs.length];
+        int n = lod.reduce(from, to, buckets, xs, ys);
+        String at = "window " + from + "-" + to + " b=" + buckets;
+        assertTrue(at, n > 0 && n % 4 == 0);
+        assertTrue(at, n <= xs.length);
+        assertEquals(at, 0F, xs[0], 0F);
+        assertEquals(at, to - from - 1, xs[n - 1], 0F);
+
+        for (int v = 0; v < n; v += 4) {
+            if (v > 0) assertEquals(at, xs[v - 1] + 1, xs[v], 0F);
+            long first = from + (long) xs[v], last = from + (long) xs[v + 3];
+            float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+            for (long i = first; i <= last; i++) {
+                lo = Math.min(lo, store.get(0, i));
+                hi = Math.max(hi, store.get(0, i));
+            }
+            assertEquals(at, store.get(0, first), ys[v], 0F);
+            assertEquals(at, lo, Math.min(ys[v + 1], ys[v + 2]), 0F);
+            assertEquals(at, hi, Math.max(ys[v + 1], ys[v + 2]), 0F);
+            assertEquals(at, store.get(0, last), ys[v + 3], 0F);
+            for (int k = v; k < v + 4; k++) assertTrue(at, xs[k] >= xs[v] && xs[k] <= xs[v + 3]);
+        }
+    }
+
+    @Test
+    public void reduce_edgeBucketsStayInsideWindow() throws Exception {
+        SampleStore store = store(1, 30000);
+        LodPyramid lod = new LodPyramid(store, 0);
+        lod.update();
+        checkAgainstSamples(store, lod, 14009, 21920, 7);
+        checkAgainstSamples(store, lod, 15700, 25729, 123);
+    }
+
+    @Test
+    public void reduce_matchesBruteForce() throws Exception {
+        Random random = new Random(2);
+        SampleStore store = store(3, 2 * CAPACITY + 777);
+        LodPyramid lod = new LodPyramid(store, 0);
+        lod.update();
+        long first = store.getFirst(), count = store.getCount();
+        for (int i = 0; i < 500; i++) {
+            int buckets = 1 + random.nextInt(400);
+            long from = first + random.nextInt((int) (count - first) - 4 * buckets);
+            long to = from + 4 * buckets + random.nextInt((int) (count - from) - 4 * buckets + 1);
+            if (lod.levelFor(from, to, buckets) < 1) continue;
+            checkAgainstSamples(store, lod, from, to, buckets);
+        }
+    }
+
+    @Test
+    public void reduce_keepsWindowExtremesLikeRawM4() throws Exception {
+        SampleStore store = store(4, 30000);
+        LodPyramid lod = new LodPyramid(store, 0);
+        lod.update();
+        float[] xs = new float[Decimator.maxPoints(50)], ys = new float[xs.length];
+        float[] raw = new float[2];
+        for (long from = 1000; from < 20000; from += 1237) {
+            long to = from + 5003;
+            int n = lod.reduce(from, to, 50, xs, ys);
+            float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < n; k++) {
+                lo = Math.min(lo, ys[k]);
+                hi = Math.max(hi, ys[k]);
+            }
+            lod.minMax(from, to, raw);
+            assertEquals(raw[0], lo, 0F);
+            assertEquals(raw[1], hi, 0F);
+
+            n = new Decimator.M4().decimate(store, 0, from, to, 50, xs, ys);
+            float m4Lo = Float.POSITIVE_INFINITY, m4Hi = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < n; k++) {
+                m4Lo = Math.min(m4Lo, ys[k]);
+                m4Hi = Math.max(m4Hi, ys[k]);
+            }
+            assertEquals(m4Lo, lo, 0F);
+            assertEquals(m4Hi, hi, 0F);
+        }
+    }
+
+    @Test
+    public void minMax_matchesBruteForce() throws Exception {
+        Random random = new Random(5);
+        SampleStore store = store(6, CAPACITY + 3000);
+        LodPyramid lod = new LodPyramid(store, 0);
+        lod.update();
+        float[] out = new float[2];
+        for (int i = 0; i < 500; i++) {
+            long from = store.getFirst() + random.nextInt(CAPACITY - 1);
+            long to = from + 1 + random.nextInt((int) (store.getCount() - from));
+            lod.minMax(from, to, out);
+            float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+            for (long k = from; k < to; k++) {
+                lo = Math.min(lo, store.get(0, k));
+                hi = Math.max(hi, store.get(0, k));
+            }
+            assertEquals(lo, out[0], 0F);
+            assertEquals(hi, out[1], 0F);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantizedSampleStoreTest {
+
+    private static final int BLOCK = QuantizedSampleStore.BLOCK_SAMPLES;
+
+    private static float[] randomWalk(long seed, int n, float stepSize) {
+        Random random = new Random(seed);
+        float[] vals = new float[n];
+        float v = 0;
+        for (int i = 0; i < n; i++) {
+            v += (float) random.nextGaussian() * stepSize;
+            vals[i] = v;
+        }
+        return vals;
+    }
+
+    /* Appends vals in uneven batches, as a feed would */
+    private static void appendAll(QuantizedSampleStore store, float[] vals) {
+        float[][] block = {vals};
+        for (int i = 0; i < vals.length; i += 100) {
+            store.append(block, i, Math.min(100, vals.length - i));
+        }
+    }
+
+    /* getMaxError plus the float rounding the class comment allows for */
+    private static float bound(QuantizedSampleStore store, long idx, float v) {
+        return store.getMaxError(0, idx) * 1.0001F + Math.abs(v) * 1e-6F;
+    }
+
+    private static void checkWithinMaxError(int bits) {
+        int capacity = 16 * BLOCK;
+        QuantizedSampleStore store = new QuantizedSampleStore(1, capacity, false, bits);
+        float[] vals = randomWalk(bits, capacity, 0.5F);
+        appendAll(store, vals);
+
+        assertEquals(capacity, store.getCount());
+        float worst = 0;
+        for (int i = 0; i < capacity; i++) {
+            float err = Math.abs(store.get(0, i) - vals[i]);
+            assertTrue("sample " + i + " off by " + err, err <= bound(store, i, vals[i]));
+            worst = Math.max(worst, err);
+        }
+        /* Encoded blocks really are lossy, so the check above means something */
+        assertTrue(worst > 0);
+    }
+
+    @Test
+    public void blockScaled16_withinMaxError() throws Exception {
+        checkWithinMaxError(16);
+    }
+
+    @Test
+    public void blockScaled8_withinMaxError() throws Exception {
+        checkWithinMaxError(8);
+    }
+
+    @Test
+    public void maxError_followsBlockRange() throws Exception {
+        QuantizedSampleStore store = new QuantizedSampleStore(1, 4 * BLOCK, false, 8);
+        float[] vals = new float[4 * BLOCK];
+        for (int i = 0; i < BLOCK; i++) vals[i] = (i % 2 == 0) ? 0F : 254F;
+        for (int i = BLOCK; i < 2 * BLOCK; i++) vals[i] = (i % 2 == 0) ? 0F : 2.54F;
+        appendAll(store, vals);
+
+        /* 254 levels over each block's range, half a step of error */
+        assertEquals(0.5F, store.getMaxError(0, 0), 1e-6F);
+        assertEquals(0.005F, store.getMaxError(0, BLOCK), 1e-6F);
+    }
+
+    @Test
+    public void newestBlocks_areExact() throws Exception {
+        QuantizedSampleStore store = new QuantizedSampleStore(1, 8 * BLOCK, false, 8);
+        float[] vals = randomWalk(7, 5 * BLOCK + 17, 1F);
+        appendAll(store, vals);
+
+        /* The block being filled and the one sealed before it are still read as floats */
+        for (int i = 4 * BLOCK; i < vals.length; i++) {
+            assertEquals(vals[i], store.get(0, i), 0F);
+        }
+    }
+
+    @Test
+    public void fixedBounds_clampAndStayWithinMaxError() throws Exception {
+        QuantizedSampleStore store = new QuantizedSampleStore(1, 4 * BLOCK, false, 16);
+        store.setBounds(0, -1F, 1F);
+        float[] vals = randomWalk(11, 4 * BLOCK, 0.05F);
+        vals[3] = 5F;
+        vals[4] = -5F;
+        appendAll(store, vals);
+
+        float maxError = store.getMaxError(0, 0);
+        assertEquals(2F / 65534 / 2, maxError, 1e-9F);
+        for (int i = 0; i < vals.length; i++) {
+            float clamped = Math.max(-1F, Math.min(1F, vals[i]));
+            assertEquals("sample " + i, clamped, store.get(0, i), bound(store, i, clamped));
+        }
+    }
+
+    @Test
+    public void nonFinite_nanKeptInfinityClamped() throws Exception {
+        QuantizedSampleStore store = new QuantizedSampleStore(1, 8 * BLOCK, false, 16);
+        float[] vals = randomWalk(13, 4 * BLOCK, 1F);
+        vals[10] = Float.NaN;
+        vals[11] = Float.POSITIVE_INFINITY;
+        vals[12] = Float.NEGATIVE_INFINITY;
+        appendAll(store, vals);
+
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < BLOCK; i++) {
+            if (Float.isNaN(vals[i]) || Float.isInfinite(vals[i])) continue;
+            min = Math.min(min, vals[i]);
+            max = Math.max(max, vals[i]);
+        }
+        assertTrue(Float.isNaN(store.get(0, 10)));
+        assertEquals(max, store.get(0, 11), bound(store, 11, max));
+        assertEquals(min, store.get(0, 12), bound(store, 12, min));
+    }
+
+    @Test
+    public void ring_keepsNewestCapacity() throws Exception {
+        int capacity = 4 * BLOCK;
+        QuantizedSampleStore store = new QuantizedSampleStore(1, capacity, true, 16);
+        assertEquals(capacity, store.getCapacity());
+        int n = 3 * capacity + 123;
+        float[] vals = randomWalk(17, n, 1F);
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) times[i] = 10L * i;
+        float[][] block = {vals};
+        for (int i = 0; i < n; i += 1000) store.append(times, block, i, Math.min(1000, n - i));
+
+        assertEquals(n, store.getCount());
+        assertEquals(n - capacity, store.getFirst());
+        for (long i = store.getFirst(); i < n; i++) {
+            assertEquals(10L * i, store.getTime(i));
+            assertEquals(vals[(int) i], store.get(0, i), bound(store, i, vals[(int) i]));
+        }
+        assertTrue(store.isIntact(store.getFirst()));
+        assertFalse(store.isIntact(store.getFirst() - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherWidths() throws Exception {
+        new QuantizedSampleStore(1, BLOCK, false, 12);
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SampleStoreSearchTest {
+
+    private static final float[] ONE = {0F};
+
+    private static SampleStore store(long... times) {
+        SampleStore store = new SampleStore(1, times.length, true);
+        for (long t : times) store.append(t, ONE);
+        return store;
+    }
+
+    /* What search should return: the first held sample at or after time */
+    private static long linear(SampleStore store, long time) {
+        for (long i = store.getFirst(); i < store.getCount(); i++) {
+            if (store.getTime(i) >= time) return i;
+        }
+        return store.getCount();
+    }
+
+    @Test
+    public void search_anyHintFindsTheSameSample() throws Exception {
+        SampleStore store = store(0, 10, 20, 30, 40, 50, 60, 70, 80, 90);
+        for (long hint = -3; hint <= 13; hint++) {
+            assertEquals("hint " + hint, 4, store.search(35, hint));
+            assertEquals("hint " + hint, 4, store.search(40, hint));
+            assertEquals("hint " + hint, 5, store.search(41, hint));
+        }
+    }
+
+    @Test
+    public void search_outsideTheSamples() throws Exception {
+        SampleStore store = store(100, 200, 300);
+        assertEquals(0, store.search(Long.MIN_VALUE, 2));
+        assertEquals(0, store.search(100, 3));
+        assertEquals(3, store.search(301, 0));
+        assertEquals(3, store.search(Long.MAX_VALUE, -1));
+        assertEquals(0, new SampleStore(1, 4, true).search(5, 0));
+    }
+
+    @Test
+    public void search_equalTimesGiveTheFirst() throws Exception {
+        SampleStore store = store(1, 5, 5, 5, 5, 5, 9);
+        for (long hint = 0; hint <= 7; hint++) {
+            assertEquals("hint " + hint, 1, store.search(5, hint));
+            assertEquals("hint " + hint, 6, store.search(6, hint));
+        }
+    }
+
+    @Test
+    public void search_staysInsideTheRing() throws Exception {
+        SampleStore store = new SampleStore(1, 16, true);
+        for (int i = 0; i < 50; i++) store.append(10L * i, ONE);
+        assertEquals(34, store.getFirst());
+
+        /* Older samples are gone, so the oldest held one is the answer */
+        assertEquals(34, store.search(0, 0));
+        assertEquals(34, store.search(100, 40));
+        assertEquals(40, store.search(395, 0));
+        assertEquals(40, store.search(400, 100));
+        assertEquals(50, store.search(1000, 34));
+    }
+
+    @Test
+    public void search_matchesLinearScan() throws Exception {
+        Random random = new Random(3);
+        SampleStore store = new SampleStore(1, 1024, true);
+        long t = 0;
+        for (int i = 0; i < 3000; i++) {
+            /* Runs of equal stamps and the odd gap */
+            t += (random.nextInt(4) == 0) ? 0 : 1 + random.nextInt(random.nextInt(50) == 0 ? 500 : 5);
+            store.append(t, ONE);
+        }
+        long first = store.getFirst(), count = store.getCount();
+        long span = store.getTime(count - 1) - store.getTime(first);
+        for (int i = 0; i < 20000; i++) {
+            long time = store.getTime(first) - 10 + (long) (random.nextDouble() * (span + 20));
+            long hint = first - 20 + random.nextInt((int) (count - first) + 40);
+            assertEquals("time " + time + " hint " + hint, linear(store, time), store.search(time, hint));
+        }
+    }
+
+}
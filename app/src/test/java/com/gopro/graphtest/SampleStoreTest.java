@@ -0,0 +1,115 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleStoreTest {
+
+    /* Column 0 holds the index, column 1 its negation, timestamps ten times it */
+    private static void appendIndices(SampleStore store, long from, int count) {
+        long[] times = new long[count];
+        float[][] block = new float[2][count];
+        for (int i = 0; i < count; i++) {
+            times[i] = 10 * (from + i);
+            block[0][i] = from + i;
+            block[1][i] = -(from + i);
+        }
+        store.append(times, block, 0, count);
+    }
+
+    private static void checkHeld(SampleStore store) {
+        for (long i = store.getFirst(); i < store.getCount(); i++) {
+            assertEquals(i, store.get(0, i), 0F);
+            assertEquals(-i, store.get(1, i), 0F);
+            assertEquals(10 * i, store.getTime(i));
+        }
+    }
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() throws Exception {
+        assertEquals(1024, new SampleStore(1, 1000).getCapacity());
+        assertEquals(1024, new SampleStore(1, 1024).getCapacity());
+        assertFalse(new SampleStore(1, 8).hasTimes());
+        assertTrue(new SampleStore(1, 8, true).hasTimes());
+    }
+
+    @Test
+    public void append_wrapsAroundTheRing() throws Exception {
+        SampleStore store = new SampleStore(2, 64, true);
+        long next = 0;
+        /* Batches that straddle the end of the ring in every way */
+        int[] sizes = {1, 63, 5, 64, 7, 100, 30, 1, 200};
+        for (int size : sizes) {
+            appendIndices(store, next, size);
+            next += size;
+            assertEquals(next, store.getCount());
+            assertEquals(Math.max(0, next - 64), store.getFirst());
+            checkHeld(store);
+        }
+    }
+
+    @Test
+    public void append_singleSamples() throws Exception {
+        SampleStore store = new SampleStore(2, 16, true);
+        for (int i = 0; i < 40; i++) store.append(10L * i, new float[]{i, -i});
+        assertEquals(40, store.getCount());
+        assertEquals(24, store.getFirst());
+        checkHeld(store);
+    }
+
+    @Test
+    public void write_isInvisibleUntilPublished() throws Exception {
+        SampleStore store = new SampleStore(1, 16);
+        store.append(new float[][]{new float[16]}, 0, 16);
+        assertTrue(store.isIntact(0));
+
+        store.write(0, new float[]{1, 2, 3}, 0, 3);
+        /* Not counted yet, but already overwriting the oldest three */
+        assertEquals(16, store.getCount());
+        assertFalse(store.isIntact(0));
+        assertFalse(store.isIntact(2));
+        assertTrue(store.isIntact(3));
+
+        store.publish(19);
+        assertEquals(19, store.getCount());
+        assertEquals(3, store.getFirst());
+        assertEquals(3F, store.get(0, 18), 0F);
+        store.publish(19);
+        assertEquals(19, store.getCount());
+    }
+
+    @Test
+    public void isIntact_neverPassesALappedWindow() throws Exception {
+        final SampleStore store = new SampleStore(2, 256, true);
+        final long total = 2000000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (long next = 0; next < total; next += 37) appendIndices(store, next, 37);
+            }
+        };
+        producer.start();
+
+        long passed = 0;
+        while (producer.isAlive()) {
+            long to = store.getCount();
+            long from = Math.max(store.getFirst(), to - 200);
+            float[] vals = new float[(int) (to - from)];
+            long[] times = new long[vals.length];
+            for (int i = 0; i < vals.length; i++) {
+                vals[i] = store.get(0, from + i);
+                times[i] = store.getTime(from + i);
+            }
+            if (!store.isIntact(from)) continue;
+            for (int i = 0; i < vals.length; i++) {
+                assertEquals(from + i, vals[i], 0F);
+                assertEquals(10 * (from + i), times[i]);
+            }
+            passed++;
+        }
+        producer.join();
+        assertTrue(passed > 0);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+
+    private static final long SPAN = TileCache.TILE_COLUMNS;
+    private static final long BUDGET = 4L << 20;
+
+    private final SampleStore store = new SampleStore(2, 1024);
+    private final TileCache.Key key = new TileCache.Key();
+
+    /* A level-0 tile of the given number of vertices, read up to end */
+    private static TileCache.Tile tile(int vertices, long end) {
+        return new TileCache.Tile(new float[vertices], new float[vertices],
+                new int[TileCache.TILE_COLUMNS + 1], end);
+    }
+
+    @Test
+    public void get_returnsWhatWasPut() throws Exception {
+        TileCache cache = new TileCache(BUDGET);
+        TileCache.Tile t = tile(10, SPAN);
+        cache.put(key.set(store, 0, 0, 0), t);
+        assertSame(t, cache.get(key.set(store, 0, 0, 0), 5000));
+        assertNull(cache.get(key.set(store, 1, 0, 0), 5000));
+        assertNull(cache.get(key.set(store, 0, 1, 0), 5000));
+        assertNull(cache.get(key.set(store, 0, 0, 1), 5000));
+        assertNull(cache.get(key.set(new SampleStore(2, 1024), 0, 0, 0), 5000));
+    }
+
+    @Test
+    public void put_copiesTheCallersKey() throws Exception {
+        TileCache cache = new TileCache(BUDGET);
+        TileCache.Tile t = tile(10, 3 * SPAN);
+        cache.put(key.set(store, 0, 0, 2), t);
+        /* The caller reuses its key for the next lookup */
+        key.set(store, 0, 0, 7);
+        assertNull(cache.get(key, 5000));
+        assertSame(t, cache.get(key.set(store, 0, 0, 2), 5000));
+    }
+
+    @Test
+    public void get_rejectsTileCutShortAtAnotherLiveEnd() throws Exception {
+        TileCache cache = new TileCache(BUDGET);
+        /* Tile 1 spans [64, 128) but was built when only 100 samples were published */
+        TileCache.Tile partial = tile(10, 100);
+        cache.put(key.set(store, 0, 0, 1), partial);
+        assertSame(partial, cache.get(key, 100));
+        assertNull(cache.get(key, 101));
+        assertNull(cache.get(key, 5000));
+
+        /* Level 2 tiles span 256 samples */
+        TileCache.Tile whole = tile(10, 4 * SPAN * 2);
+        cache.put(key.set(store, 0, 2, 1), whole);
+        assertSame(whole, cache.get(key, 100));
+        assertSame(whole, cache.get(key, 5000));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedOverBudget() throws Exception {
+        int bytes = tile(100, SPAN).bytes();
+        TileCache cache = new TileCache(3L * bytes);
+        TileCache.Tile[] tiles = new TileCache.Tile[4];
+        for (int i = 0; i < 3; i++) {
+            tiles[i] = tile(100, (i + 1) * SPAN);
+            cache.put(key.set(store, 0, 0, i), tiles[i]);
+        }
+        assertEquals(3L * bytes, cache.getBytes());
+
+        /* Touch tile 0 so tile 1 is the oldest */
+        assertSame(tiles[0], cache.get(key.set(store, 0, 0, 0), 0));
+        tiles[3] = tile(100, 4 * SPAN);
+        cache.put(key.set(store, 0, 0, 3), tiles[3]);
+        assertEquals(3L * bytes, cache.getBytes());
+        assertNull(cache.get(key.set(store, 0, 0, 1), 0));
+        assertSame(tiles[0], cache.get(key.set(store, 0, 0, 0), 0));
+        assertSame(tiles[2], cache.get(key.set(store, 0, 0, 2), 0));
+        assertSame(tiles[3], cache.get(key.set(store, 0, 0, 3), 0));
+    }
+
+    @Test
+    public void put_replacingATileKeepsTheByteCount() throws Exception {
+        TileCache cache = new TileCache(BUDGET);
+        cache.put(key.set(store, 0, 0, 1), tile(10, 100));
+        TileCache.Tile rebuilt = tile(40, 2 * SPAN);
+        cache.put(key, rebuilt);
+        assertEquals(rebuilt.bytes(), cache.getBytes());
+        assertSame(rebuilt, cache.get(key, 5000));
+    }
+
+    @Test
+    public void budget_refusesOversizeAndTrimsOnShrink() throws Exception {
+        int bytes = tile(100, SPAN).bytes();
+        TileCache cache = new TileCache(bytes - 1);
+        cache.put(key.set(store, 0, 0, 0), tile(100, SPAN));
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(key, 0));
+
+        cache.setMaxBytes(4L * bytes);
+        for (int i = 0; i < 4; i++) cache.put(key.set(store, 0, 0, i), tile(100, (i + 1) * SPAN));
+        assertEquals(4L * bytes, cache.getBytes());
+        cache.setMaxBytes(2L * bytes);
+        assertEquals(2L * bytes, cache.getBytes());
+        assertNull(cache.get(key.set(store, 0, 0, 0), 0));
+        assertNotNull(cache.get(key.set(store, 0, 0, 3), 0));
+
+        cache.setMaxBytes(0);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getBytes());
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+    }
+
+}
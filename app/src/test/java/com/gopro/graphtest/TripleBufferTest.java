@@ -0,0 +1,84 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+    private static final class Frame {
+        long seq = -1;
+    }
+
+    private final Frame a = new Frame(), b = new Frame(), c = new Frame();
+    private final TripleBuffer<Frame> buffer = new TripleBuffer<Frame>(a, b, c);
+
+    @Test
+    public void startsWithFrontAndBackApart() throws Exception {
+        assertSame(a, buffer.getFront());
+        assertSame(c, buffer.getBack());
+        /* Nothing published: the front stays put */
+        assertSame(a, buffer.getFront());
+    }
+
+    @Test
+    public void publish_handsTheBackToTheFront() throws Exception {
+        Frame back = buffer.getBack();
+        back.seq = 1;
+        buffer.publish();
+        assertNotSame(back, buffer.getBack());
+        assertSame(back, buffer.getFront());
+        assertSame(back, buffer.getFront());
+    }
+
+    @Test
+    public void getFront_skipsToTheNewestFrame() throws Exception {
+        buffer.getBack().seq = 1;
+        buffer.publish();
+        Frame newest = buffer.getBack();
+        newest.seq = 2;
+        buffer.publish();
+        assertSame(newest, buffer.getFront());
+        assertEquals(2, buffer.getFront().seq);
+    }
+
+    @Test
+    public void neverHandsOutTheSameBufferToBothSides() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (i % 3 != 0) {
+                buffer.getBack().seq = i;
+                buffer.publish();
+            }
+            if (i % 2 == 0) buffer.getFront();
+            assertNotSame(buffer.getFront(), buffer.getBack());
+        }
+    }
+
+    @Test
+    public void concurrent_frontIsNeverTornOrOlder() throws Exception {
+        final int frames = 200000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    Frame back = buffer.getBack();
+                    /* Torn while being written: seq is odd only mid-write */
+                    back.seq = 2L * i + 1;
+                    back.seq = 2L * i;
+                    buffer.publish();
+                }
+            }
+        };
+        producer.start();
+        long last = -1;
+        while (producer.isAlive() || last < 2L * (frames - 1)) {
+            long seq = buffer.getFront().seq;
+            assertTrue(seq % 2 == 0 || seq == -1);
+            assertTrue("went back from " + last + " to " + seq, seq >= last);
+            last = seq;
+        }
+        producer.join();
+        assertEquals(2L * (frames - 1), buffer.getFront().seq);
+    }
+
+}
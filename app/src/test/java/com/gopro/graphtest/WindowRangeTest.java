@@ -0,0 +1,101 @@
+package com.gopro.graphtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WindowRangeTest {
+
+    private final Random random = new Random(1);
+    private final SampleStore store = new SampleStore(1, 1 << 14);
+    private final Series series = new Series(0);
+    private final WindowRange range = new WindowRange();
+    private final float[] sample = new float[1];
+    private float walk;
+
+    public WindowRangeTest() {
+        series.setSource(store, 0);
+    }
+
+    private void append(int count, boolean nonFinite) {
+        for (int i = 0; i < count; i++) {
+            walk += (float) random.nextGaussian();
+            sample[0] = walk;
+            if (nonFinite) {
+                int r = random.nextInt(50);
+                if (r == 0) sample[0] = Float.NaN;
+                else if (r == 1) sample[0] = (random.nextBoolean() ? 1 : -1) * Float.POSITIVE_INFINITY;
+            }
+            store.append(sample);
+        }
+        series.source.lod.update();
+    }
+
+    private void check(long from, long to) {
+        range.update(series.source, from, to);
+        float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+        for (long i = Math.max(from, 0); i < Math.min(to, store.getCount()); i++) {
+            float v = store.get(0, i);
+            if (Float.isNaN(v) || Float.isInfinite(v)) continue;
+            lo = Math.min(lo, v);
+            hi = Math.max(hi, v);
+        }
+        String at = "window " + from + "-" + to;
+        if (lo > hi) {
+            assertTrue(at, Float.isNaN(range.getMin()));
+            assertTrue(at, Float.isNaN(range.getMax()));
+        } else {
+            assertEquals(at, lo, range.getMin(), 0F);
+            assertEquals(at, hi, range.getMax(), 0F);
+        }
+    }
+
+    @Test
+    public void sliding_matchesBruteForce() throws Exception {
+        /* Following live data: the deques do all the work, non-finite values skipped */
+        int width = 500;
+        for (int i = 0; i < 400; i++) {
+            append(1 + random.nextInt(40), true);
+            long to = store.getCount();
+            check(to - width, to);
+            if (i % 50 == 0) width += 300;
+        }
+    }
+
+    @Test
+    public void sliding_windowOfOnlyNaN() throws Exception {
+        sample[0] = Float.NaN;
+        for (int i = 0; i < 10; i++) store.append(sample);
+        series.source.lod.update();
+        check(0, 10);
+        append(5, false);
+        check(10, 15);
+    }
+
+    @Test
+    public void jumpsAndPans_matchBruteForce() throws Exception {
+        append(12000, false);
+        long count = store.getCount();
+        check(count - 1000, count);
+        /* Pan back, far back, wide, then live again and sliding */
+        check(count - 3000, count - 2000);
+        check(500, 900);
+        check(2000, count);
+        check(count - 70000, count);
+        check(count - 800, count);
+        for (int i = 0; i < 50; i++) {
+            append(20, false);
+            check(store.getCount() - 800, store.getCount());
+        }
+    }
+
+    @Test
+    public void update_clampsToPublished() throws Exception {
+        append(100, false);
+        check(50, 400);
+        check(-20, 30);
+    }
+
+}
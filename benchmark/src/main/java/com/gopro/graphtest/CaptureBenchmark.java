@@ -0,0 +1,76 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding speed of a capture, per sample, replayed as fast as possible
+ * into a sink that only touches the values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+    private static final int COLUMNS = 3;
+
+    @Param({"0", "8", "16"})
+    public int bits;
+
+    private byte[] capture;
+    private double sum;
+
+    private final SampleSink sink = new SampleSink() {
+        @Override
+        public void appendSamples(long[] times, float[][] block, int offset, int count) {
+            sum += times[offset + count - 1];
+            for (float[] col : block) sum += col[offset + count - 1];
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        long[] times = new long[SAMPLES];
+        float[][] block = new float[COLUMNS][SAMPLES];
+        RandomData random = new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15);
+        for (int col = 0; col < COLUMNS; col++) random.split().fillNext(block[col], 0, SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) times[i] = i * 10L;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CaptureWriter writer = new CaptureWriter(out, COLUMNS, TimeUnit.MILLISECONDS.toNanos(1), bits);
+        /* Whole blocks at a time, leaving the writer thread time to keep up */
+        for (int i = 0; i < SAMPLES; i += CaptureWriter.BLOCK_SAMPLES) {
+            writer.appendSamples(times, block, i, CaptureWriter.BLOCK_SAMPLES);
+            Thread.sleep(1);
+        }
+        writer.close();
+        capture = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double replay() throws IOException, InterruptedException {
+        new CaptureReader(new ByteArrayInputStream(capture)).replay(sink, 0);
+        return sum;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.gopro.graphtest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders synthetic charts to PNG files on a plain JVM, through the same
+ * ChartEngine passes DataView runs on a device.
+ *
+ *   ./gradlew :benchmark:snapshots -PsnapshotArgs='out 1000 1080 600 8 1'
+ *
+ * Arguments: output directory, snapshot count, width, height, series count,
+ * line mode (0 for segments, 1 for strips).
+ */
+public class ChartSnapshots {
+
+    private static final int HISTORY = 1 << 18;
+    private static final int[] COLORS = {0xFFFF0000, 0xFF00EF00, 0xFF0000FF, 0xFFFF8000,
+            0xFF8000FF, 0xFF00A0A0, 0xFFA0A000, 0xFF404040};
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "snapshots");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int width = args.length > 2 ? Integer.parseInt(args[2]) : 1080;
+        int height = args.length > 3 ? Integer.parseInt(args[3]) : 600;
+        int numSeries = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        int lineMode = args.length > 5 ? Integer.parseInt(args[5]) : LineBuilder.MODE_SEGMENTS;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        ExecutorService workers = Executors.newFixedThreadPool((cpus > 1) ? cpus - 1 : 1);
+        ChartEngine engine = new ChartEngine(workers, cpus);
+        SampleStore store = new SampleStore(numSeries, 2 * HISTORY);
+        float[][] block = new float[numSeries][HISTORY];
+        RandomData random = new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15);
+        for (int i = 0; i < numSeries; i++) {
+            random.split().fillNext(block[i], 0, HISTORY);
+            engine.setSource(i, store, i);
+            Series s = engine.getSeries().obtain(i);
+            s.setYMinMax(-1F, 1F);
+            s.color = COLORS[i % COLORS.length];
+            engine.getSeries().setEnabled(i, true);
+        }
+        store.append(block, 0, HISTORY);
+        engine.setDecimation(Decimator.MODE_M4);
+        engine.setLineMode(lineMode);
+
+        Raster raster = new Raster(width, height);
+        PngEncoder png = new PngEncoder(6);
+        long xSize = engine.xEnd();
+        long start = System.nanoTime();
+        try {
+            for (int n = 0; n < count; n++) {
+                /* Zoom out from 200 samples to the whole history and back */
+                double phase = Math.sin(Math.PI * n / Math.max(1, count - 1));
+                int xRange = (int) (200 * Math.pow(HISTORY / 200.0, phase));
+                long xOffs = engine.clampXOffs((xSize - xRange) * n / Math.max(1, count - 1));
+                engine.render(xOffs, xRange, xSize, width, height, ChartEngine.CHANGED_XRANGE);
+
+                raster.clear(0xFFFFFFFF);
+                engine.rasterize(raster, 4F);
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(new File(dir, String.format("chart%05d.png", n))));
+                try {
+                    png.write(raster, out);
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            png.release();
+            workers.shutdown();
+        }
+        System.out.printf("%d snapshots in %d ms%n", count, (System.nanoTime() - start) / 1000000);
+        for (String line : engine.getStats().dump()) System.out.println(line);
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Axis and readout label formatting, per label, over values spread across
+ * several orders of magnitude.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LabelFormatterBenchmark {
+
+    private static final int NUM_VALUES = 1024;
+
+    private final LabelFormatter formatter = new LabelFormatter(2);
+    private final char[] out = new char[LabelFormatter.MAX_LENGTH];
+    private final float[] advances = new float[128];
+    private final double[] values = new double[NUM_VALUES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplitRandom random = new SplitRandom(1L);
+        for (int i = 0; i < NUM_VALUES; i++) {
+            values[i] = (random.nextFloat() - 0.5F) * Math.pow(10, (i % 13) - 6);
+        }
+        for (int c = ' '; c < advances.length; c++) advances[c] = 7F;
+    }
+
+    @Benchmark
+    public int format() {
+        return formatter.format(values[next++ & (NUM_VALUES - 1)], out, 0);
+    }
+
+    @Benchmark
+    public float formatAndMeasure() {
+        int len = formatter.format(values[next++ & (NUM_VALUES - 1)], out, 0);
+        return LabelFormatter.measure(out, 0, len, advances);
+    }
+
+}
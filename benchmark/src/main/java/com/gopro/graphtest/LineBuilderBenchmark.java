@@ -0,0 +1,132 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point building for every series of one pass, the way DataView's render
+ * tasks run it: a full rebuild, the one-sample scroll while following live
+ * data, and the y and x scaling underneath. Windows of more than
+ * LineBuilder.MAX_HORZ_POINTS samples go through the decimator, and with
+ * tileBytes set, M4 ones through a TileCache. Strip lines are rebuilt in
+ * full even when scrolling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineBuilderBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+    private static final int HISTORY = 1 << 20;
+
+    /* Visible samples at zoom 1 */
+    @Param({"200", "400"})
+    public int window;
+
+    /* Samples per visible sample; above 1 the window is decimated */
+    @Param({"1", "10", "100", "1000"})
+    public int zoom;
+
+    @Param({"1", "8", "32"})
+    public int series;
+
+    @Param({"1"})
+    public int decimation;
+
+    /* LineBuilder.MODE_SEGMENTS or MODE_STRIP */
+    @Param({"0", "1"})
+    public int lineMode;
+
+    /* TileCache budget, 0 for none */
+    @Param({"0", "4194304"})
+    public long tileBytes;
+
+    private final LineBuilder builder = new LineBuilder();
+    private final PointFrame frame = new PointFrame();
+    private final float[] xPts = new float[LineBuilder.MAX_HORZ_POINTS + 1];
+    private Series[] all;
+    private int xRange;
+    private long xOffs, xSize;
+
+    @Setup
+    public void setUp() {
+        SampleStore store = new SampleStore(series, HISTORY);
+        float[][] block = new float[series][HISTORY];
+        RandomData random = new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15);
+        all = new Series[series];
+        for (int i = 0; i < series; i++) {
+            random.split().fillNext(block[i], 0, HISTORY);
+            all[i] = new Series(i);
+            all[i].setSource(store, i);
+            all[i].setYMinMax(-1F, 1F);
+        }
+        store.append(block, 0, HISTORY);
+        for (Series s : all) s.source.lod.update();
+
+        xRange = window * zoom;
+        xSize = store.getCount();
+        xOffs = 0;
+        LineBuilder.calcXPts(xPts, xRange, WIDTH);
+        builder.setDecimation(decimation);
+        builder.setLineMode(lineMode);
+        if (tileBytes > 0) builder.setTileCache(new TileCache(tileBytes));
+        setViewport();
+        frame.ensureLines(series);
+        fullRedraw();
+    }
+
+    private void setViewport() {
+        builder.setViewport(xPts, WIDTH, HEIGHT, xOffs, xRange, xSize, false);
+    }
+
+    @Benchmark
+    public PointFrame fullRedraw() {
+        for (Series s : all) builder.build(frame, s, -1);
+        return frame;
+    }
+
+    @Benchmark
+    public PointFrame scroll() {
+        long shift = 1;
+        if (xOffs + xRange >= xSize) {
+            xOffs = 0;
+            shift = -1;
+        } else {
+            xOffs++;
+        }
+        setViewport();
+        for (Series s : all) builder.build(frame, s, shift);
+        return frame;
+    }
+
+    @Benchmark
+    public float calcY() {
+        builder.begin(all[0]);
+        int numPts = LineBuilder.numSegments(xOffs, xRange, xSize);
+        float sum = 0;
+        for (int i = 0; i <= numPts; i++) sum += builder.calcY(xOffs + i);
+        return sum;
+    }
+
+    @Benchmark
+    public float[] calcXPts() {
+        LineBuilder.calcXPts(xPts, xRange, WIDTH);
+        return xPts;
+    }
+
+}
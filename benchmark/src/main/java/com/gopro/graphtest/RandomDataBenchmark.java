@@ -0,0 +1,44 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic sample generation, per value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RandomDataBenchmark {
+
+    private static final int BATCH = 1024;
+
+    private final RandomData random = new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15);
+    private final float[] out = new float[BATCH];
+
+    @Benchmark
+    public float getNext() {
+        return random.getNext();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public float[] fillNext() {
+        random.fillNext(out, 0, BATCH);
+        return out;
+    }
+
+}
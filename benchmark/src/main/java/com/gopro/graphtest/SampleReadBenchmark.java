@@ -0,0 +1,64 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of reading a window back from the different in-memory
+ * stores, as the render pass does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleReadBenchmark {
+
+    private static final int HISTORY = 1 << 18;
+    private static final int WINDOW = 4096;
+
+    @Param({"float", "q16", "q8", "q16-bounds"})
+    public String store;
+
+    private SampleSource source;
+    private long from;
+
+    @Setup
+    public void setUp() {
+        WritableSampleSource s;
+        if (store.equals("float")) {
+            s = new SampleStore(1, HISTORY);
+        } else {
+            QuantizedSampleStore q = new QuantizedSampleStore(1, HISTORY, false, store.startsWith("q8") ? 8 : 16);
+            if (store.endsWith("bounds")) q.setBounds(0, -1F, 1F);
+            s = q;
+        }
+        float[][] block = new float[1][HISTORY - 1];
+        new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15).fillNext(block[0], 0, block[0].length);
+        s.append(block, 0, block[0].length);
+        source = s;
+        from = HISTORY / 2;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public float readWindow() {
+        float sum = 0;
+        for (long i = from; i < from + WINDOW; i++) sum += source.get(0, i);
+        return sum;
+    }
+
+}
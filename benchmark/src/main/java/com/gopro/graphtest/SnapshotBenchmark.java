@@ -0,0 +1,97 @@
+package com.gopro.graphtest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The headless pipeline per chart: a full engine pass, rasterizing the
+ * frame, and PNG encoding. Runs single-threaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+    private static final int HISTORY = 1 << 18;
+
+    @Param({"200", "20000"})
+    public int window;
+
+    @Param({"1", "8"})
+    public int series;
+
+    private final Raster raster = new Raster(WIDTH, HEIGHT);
+    private final PngEncoder png = new PngEncoder(6);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private ChartEngine engine;
+    private long xSize;
+
+    @Setup
+    public void setUp() {
+        engine = new ChartEngine(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, 1);
+        SampleStore store = new SampleStore(series, HISTORY);
+        float[][] block = new float[series][HISTORY];
+        RandomData random = new RandomData(1L, -1F, 1F, 0.02F, 1.3F, 0.4F, 15);
+        for (int i = 0; i < series; i++) {
+            random.split().fillNext(block[i], 0, HISTORY);
+            engine.setSource(i, store, i);
+            engine.getSeries().obtain(i).setYMinMax(-1F, 1F);
+            engine.getSeries().setEnabled(i, true);
+        }
+        store.append(block, 0, HISTORY);
+        engine.setDecimation(Decimator.MODE_M4);
+        xSize = engine.xEnd();
+    }
+
+    @TearDown
+    public void tearDown() {
+        png.release();
+    }
+
+    @Benchmark
+    public boolean render() {
+        return engine.render(xSize - window, window, xSize, WIDTH, HEIGHT, ChartEngine.CHANGED_XRANGE);
+    }
+
+    @Benchmark
+    public Raster renderAndRasterize() {
+        render();
+        raster.clear(0xFFFFFFFF);
+        engine.rasterize(raster, 4F);
+        return raster;
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        renderAndRasterize();
+        out.reset();
+        png.write(raster, out);
+        return out.size();
+    }
+
+}